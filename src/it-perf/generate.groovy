@@ -0,0 +1,83 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+// Generates the modules of a synthetic reactor in the project of a performance IT: perfModules modules, each with
+// perfFiles main and test sources and a few resources. Evaluated by the setup.groovy of each performance IT, with the
+// variables of the invoker configuration.
+
+int modules = perfModules as int
+int files = perfFiles as int
+
+def write = { File file, String content ->
+    file.parentFile.mkdirs()
+    file.setText( content, 'UTF-8' )
+}
+
+def source = { String pkg, String type, int seed ->
+    StringBuilder body = new StringBuilder()
+    body << "package ${pkg};\n\n"
+    body << "/**\n * Synthetic type ${type}, generated for the performance tests of the maven-source-plugin.\n */\n"
+    body << "public class ${type} {\n"
+    for ( int m = 0; m < 20; m++ ) {
+        body << "    /**\n     * Computes value ${m} of ${type}.\n     *\n     * @param input the input\n"
+        body << "     * @return the value\n     */\n"
+        body << "    public long value${m}(long input) {\n"
+        body << "        return input * ${seed + m} + ${( seed * 31 + m ) % 97};\n    }\n\n"
+    }
+    body << "}\n"
+    body.toString()
+}
+
+StringBuilder moduleList = new StringBuilder()
+for ( int m = 0; m < modules; m++ ) {
+    String name = String.format( 'module-%05d', m )
+    moduleList << "    <module>${name}</module>\n"
+
+    File module = new File( basedir, name )
+    write( new File( module, 'pom.xml' ), """<project xmlns="http://maven.apache.org/POM/4.0.0">
+  <modelVersion>4.0.0</modelVersion>
+  <parent>
+    <groupId>org.apache.maven.its.perf</groupId>
+    <artifactId>${basedir.name}</artifactId>
+    <version>1.0-SNAPSHOT</version>
+  </parent>
+  <artifactId>${name}</artifactId>
+</project>
+""" )
+
+    String pkg = "org.apache.maven.its.perf.m${m}"
+    String dir = pkg.replace( '.', '/' )
+    for ( int f = 0; f < files; f++ ) {
+        write( new File( module, "src/main/java/${dir}/Type${f}.java" ), source( pkg, "Type${f}", m + f ) )
+        write( new File( module, "src/test/java/${dir}/Type${f}Test.java" ), source( pkg, "Type${f}Test", m * f ) )
+    }
+    write( new File( module, "src/main/resources/${dir}/messages.properties" ),
+            ( 0..<50 ).collect { "message.${it}=Message ${it} of module ${m}" }.join( '\n' ) )
+    write( new File( module, 'src/test/resources/fixture.txt' ),
+            ( 0..<200 ).collect { "fixture line ${it} of module ${m}" }.join( '\n' ) )
+}
+
+File pom = new File( basedir, 'pom.xml' )
+pom.text = pom.text.replace( '<!-- modules generated by setup.groovy -->', moduleList.toString().trim() )
+
+// start of the measured build
+new File( basedir, 'perf-start.txt' ).text = System.currentTimeMillis()
+
+return true
@@ -0,0 +1,28 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+int modules = perfModules as int
+int jars = 0
+basedir.eachDir { module ->
+    jars += new File( module, 'target' ).listFiles( { it.name.endsWith( '.jar' ) } as FileFilter )?.length ?: 0
+}
+assert jars == 2 * modules : "expected ${2 * modules} sources and test sources jars, found $jars"
+
+evaluate( new File( perfScripts, 'record.groovy' ) )
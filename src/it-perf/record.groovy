@@ -0,0 +1,108 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+// Records the duration and the peak heap of the build of a performance IT in ${perfResults}/<it>.json and compares
+// them with the baseline, failing when one exceeds the baseline by more than perfTolerance, or when the IT has no
+// baseline. With perfRecord=true, they are recorded as the new baseline instead. Evaluated by the verify.groovy of
+// each performance IT.
+
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+
+import java.time.Instant
+
+long elapsed = System.currentTimeMillis() - ( new File( basedir, 'perf-start.txt' ).text.trim() as long )
+int modules = perfModules as int
+int files = perfFiles as int
+
+long jars = 0
+long jarBytes = 0
+basedir.eachFileRecurse { file ->
+    if ( file.name.endsWith( '.jar' ) ) {
+        jars++
+        jarBytes += file.length()
+    }
+}
+
+// the heap used before each collection of the build, from the GC log of perf.mavenOpts: the peak is the largest
+long peakHeapMb = 0
+long committedHeapMb = 0
+File gcLog = new File( basedir, 'perf-gc.log' )
+if ( gcLog.isFile() ) {
+    gcLog.eachLine { line ->
+        def pause = line =~ /(\d+)M->\d+M\((\d+)M\)/
+        if ( pause.find() ) {
+            peakHeapMb = Math.max( peakHeapMb, pause.group( 1 ) as long )
+            committedHeapMb = Math.max( committedHeapMb, pause.group( 2 ) as long )
+        }
+    }
+}
+
+String name = basedir.name
+def result = [
+    name: name,
+    modules: modules,
+    files: files,
+    elapsedMs: elapsed,
+    peakHeapMb: peakHeapMb,
+    committedHeapMb: committedHeapMb,
+    jars: jars,
+    jarBytes: jarBytes,
+    mavenOpts: perfMavenOpts,
+    javaVersion: System.getProperty( 'java.version' ),
+    availableProcessors: Runtime.runtime.availableProcessors(),
+    timestamp: Instant.now().toString()
+]
+File resultFile = new File( perfResults, "${name}.json" )
+resultFile.parentFile.mkdirs()
+resultFile.text = JsonOutput.prettyPrint( JsonOutput.toJson( result ) ) + '\n'
+println "Performance of ${name}: ${elapsed} ms and ${peakHeapMb} MB of peak heap for ${modules} modules of ${files} " +
+        "files, written to ${resultFile}"
+
+File baselineFile = new File( perfBaseline )
+Map baseline = baselineFile.isFile() ? new JsonSlurper().parse( baselineFile ) as Map : [:]
+
+if ( perfRecord == 'true' ) {
+    baseline[name] = [
+        modules: modules,
+        files: files,
+        elapsedMs: elapsed,
+        peakHeapMb: peakHeapMb,
+        javaVersion: System.getProperty( 'java.version' ),
+        availableProcessors: Runtime.runtime.availableProcessors()
+    ]
+    baselineFile.text = JsonOutput.prettyPrint( JsonOutput.toJson( baseline.sort() ) ) + '\n'
+    println "Baseline of ${name} recorded in ${baselineFile}"
+    return true
+}
+
+def reference = baseline[name]
+// without a baseline nothing would be checked: fail rather than pass
+assert reference != null && reference.modules == modules && reference.files == files : "No baseline for ${name} " +
+        "with ${modules} modules of ${files} files in ${baselineFile}: record one with -Dperf.record=true"
+
+long budget = Math.round( ( reference.elapsedMs as long ) * ( perfTolerance as double ) )
+assert elapsed <= budget : "${name} took ${elapsed} ms, more than ${budget} ms (baseline ${reference.elapsedMs} ms x ${perfTolerance})"
+
+assert peakHeapMb > 0 : "No heap measured for ${name}: perf-gc.log has no collection"
+long heapBudget = Math.round( ( reference.peakHeapMb as long ) * ( perfTolerance as double ) )
+assert peakHeapMb <= heapBudget : "${name} used ${peakHeapMb} MB of heap, more than ${heapBudget} MB (baseline ${reference.peakHeapMb} MB x ${perfTolerance})"
+
+return true
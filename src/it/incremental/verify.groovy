@@ -0,0 +1,41 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.jar.JarFile
+
+File jarFile = new File( basedir, 'target/incremental-1.0-SNAPSHOT-sources.jar' )
+assert jarFile.isFile()
+
+File stateFile = new File( basedir, 'target/incremental-1.0-SNAPSHOT-sources.jar.state' )
+assert stateFile.isFile()
+assert stateFile.text.contains( 'MyClass.java' )
+
+new JarFile( jarFile ).withCloseable { jar ->
+    assert jar.getEntry( 'META-INF/MANIFEST.MF' ) != null
+    assert jar.getEntry( 'MyClass.java' ) != null
+    assert jar.getEntry( 'main.properties' ) != null
+}
+
+// the first build writes the jar, the second one finds it up to date from the state, without reading any file
+File buildLog = new File( basedir, 'build.log' )
+def upToDate = buildLog.text.findAll( /Sources jar incremental-1\.0-SNAPSHOT-sources\.jar is up to date \((\d+) files read\)/ ) {
+    match, reads -> reads as int
+}
+assert upToDate == [0]
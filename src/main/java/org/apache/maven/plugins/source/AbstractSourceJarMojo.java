@@ -19,19 +19,26 @@
 package org.apache.maven.plugins.source;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import org.apache.maven.api.Artifact;
 import org.apache.maven.api.Language;
 import org.apache.maven.api.ProducedArtifact;
 import org.apache.maven.api.Project;
-import org.apache.maven.api.ProjectScope;
 import org.apache.maven.api.Session;
 import org.apache.maven.api.SourceRoot;
 import org.apache.maven.api.Type;
@@ -44,11 +51,14 @@ import org.apache.maven.api.services.ArtifactManager;
 import org.apache.maven.api.services.ProjectManager;
 import org.apache.maven.shared.archiver.MavenArchiveConfiguration;
 import org.apache.maven.shared.archiver.MavenArchiver;
+import org.codehaus.plexus.archiver.ArchiveEntry;
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.ResourceIterator;
 import org.codehaus.plexus.archiver.jar.JarArchiver;
-import org.codehaus.plexus.archiver.util.DefaultFileSet;
-import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.components.io.fileselectors.FileSelector;
+import org.codehaus.plexus.components.io.functions.FileSupplier;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
 
 /**
  * Base class for bundling sources into a jar archive.
@@ -56,10 +66,6 @@ import org.codehaus.plexus.util.FileUtils;
  * @since 2.0.3
  */
 public abstract class AbstractSourceJarMojo implements Mojo {
-    private static final String[] DEFAULT_INCLUDES = new String[] {"**/**"};
-
-    private static final String[] DEFAULT_EXCLUDES = new String[] {};
-
     /**
      * List of files to include. Specified as fileset patterns which are relative to the input directory whose contents
      * is being packaged into the JAR.
@@ -184,6 +190,230 @@ public abstract class AbstractSourceJarMojo implements Mojo {
     @Parameter(property = "maven.source.forceCreation", defaultValue = "false")
     protected boolean forceCreation;
 
+    /**
+     * Whether an existing jar should be updated in place of being rewritten. Only the added and modified files are
+     * compressed, the entries of the other files are copied from the previous jar as is. The state used to detect
+     * the changes is stored next to the jar, in a <code>.state</code> file. Each changed file is read once, for its
+     * checksums and its entry, also with <code>reuseInstalled</code>.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.incremental", defaultValue = "false")
+    protected boolean incremental;
+
+    /**
+     * Whether the sources jar installed in the local repository should be attached in place of building a new one,
+     * when it was built from the same files and configuration. The fingerprint of the inputs is stored next to the
+     * installed jar, in a <code>.inputs</code> file, once the build installed the jar it built: a build without install
+     * leaves the local repository as is. The reused jar is copied to the output directory and attached from there, as
+     * the install cannot copy a file onto itself.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.reuseInstalled", defaultValue = "false")
+    protected boolean reuseInstalled;
+
+    /**
+     * Whether the jar should be written in the background, while the build of the module goes on. The entries of
+     * the jar are listed before the mojo returns, and the jar is attached right away. The jar is awaited before any
+     * install or deploy, and at the latest once the module is built: nothing else in the module should read it.
+     * A jar which failed to be written is deleted, failing the install or deploy, and the error fails the next
+     * execution of the plugin; a build running neither only logs it.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.async", defaultValue = "false")
+    protected boolean async;
+
+    /**
+     * The writer of the jar: <code>plexus</code> writes it with the plexus archiver, as the other packaging plugins;
+     * <code>zip</code> writes the entries directly with commons-compress, with less overhead per entry. Both write
+     * the same entries, manifest and Maven descriptor.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.archiveWriter", defaultValue = "plexus")
+    protected String archiveWriter;
+
+    /**
+     * The deflate level of the entries, from <code>1</code> (fastest) to <code>9</code> (smallest), or <code>0</code>
+     * to store all the entries without compression, which suits local development builds. <code>-1</code> keeps the
+     * default level of the archiver. The <code>zip</code> archive writer deflates the entries with the level as it
+     * writes them; with the plexus archiver, levels other than the default are applied by compressing again the
+     * entries it wrote stored.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.compressionLevel", defaultValue = "-1")
+    protected int compressionLevel;
+
+    /**
+     * The deflate strategy of the entries: <code>default</code>, <code>filtered</code> or <code>huffman</code> (Huffman
+     * coding only).
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.compressionStrategy", defaultValue = "default")
+    protected String compressionStrategy;
+
+    /**
+     * The memory, in bytes, of the off-heap buffers holding the entries compressed in parallel with a
+     * <code>compressionLevel</code> or <code>compressionStrategy</code> other than the default, until they are written.
+     * Beyond it, the compressed data is spilled to temporary files in the output directory. The memory is shared by
+     * all the executions of the build, the modules built in parallel included, within the largest of their budgets.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.compressionMemory", defaultValue = "67108864")
+    protected long compressionMemory;
+
+    /**
+     * The size, in bytes, from which the files compressed by the plugin itself are read through memory mapping rather
+     * than copied to the heap: the entries recompressed for a <code>compressionLevel</code> or
+     * <code>compressionStrategy</code> other than the default, and the files of an <code>incremental</code> update.
+     * <code>0</code> never maps the files.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.mappedReadThreshold", defaultValue = "1048576")
+    protected long mappedReadThreshold;
+
+    /**
+     * The size, in bytes, from which an entry is deflated in blocks of 1 MiB compressed in parallel, rather than by a
+     * single thread: a very large generated file otherwise keeps one core busy while the others wait. The blocks make
+     * one standard deflate stream, a little larger than a single thread would write. <code>0</code> never splits the
+     * entries.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.blockDeflateThreshold", defaultValue = "67108864")
+    protected long blockDeflateThreshold;
+
+    /**
+     * Patterns of the entries to store without compression whatever the compression level, for instance already
+     * compressed resources such as <code>**&#47;*.png</code>.
+     *
+     * @since 4.0.0
+     */
+    @Parameter
+    protected String[] storedFiles;
+
+    /**
+     * The order of the entries in the jar: <code>default</code> keeps the order of the archiver, sorted by name for
+     * reproducible builds; <code>locality</code> groups the entries by package, with the manifest,
+     * <code>module-info.java</code> and the public API packages first, so that tools reading parts of the jar, for
+     * instance with HTTP range requests, fetch contiguous bytes.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.entryOrder", defaultValue = "default")
+    protected String entryOrder;
+
+    /**
+     * Whether to add to the jar an index of the source files it contains, <code>META-INF/sources.idx</code>, written
+     * as the last entry. It maps the fully qualified name of each type to the offset of its entry in the jar, so that
+     * IDEs and debuggers can locate a source file in large jars without scanning the central directory.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.index", defaultValue = "false")
+    protected boolean sourceIndex;
+
+    /**
+     * Which jars to write for a project with a module source hierarchy, holding several Java modules:
+     * <code>none</code> only writes the jar of the project, <code>also</code> writes the jar of each module next to it
+     * and <code>only</code> writes the jars of the modules in place of it. With <code>only</code>, the directories
+     * belonging to no module are still packaged in the jar of the project, which is not written when there are none.
+     * The jar of a module has the name of the module before the classifier, for instance
+     * <code>org.example.api-sources</code>, and is written as the jar of the project, with the same manifest, limits,
+     * incremental update and reuse of the installed jar; the jars are written one after the other, in the background
+     * when <code>async</code> is set. Ignored for the projects without module source hierarchy.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.moduleJars", defaultValue = "none")
+    protected String moduleJars;
+
+    /**
+     * The file to append the traces of the packaging steps to, as OTLP/JSON lines, for the waterfall of the build:
+     * the execution, the resolution of the source roots, the scan of each root, the write of the jar, its
+     * compression and its attachment, with their entry counts and sizes. The spans join the trace of the
+     * <code>TRACEPARENT</code> environment variable when set. Nothing is recorded without a file nor an endpoint.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.traceFile")
+    protected Path traceFile;
+
+    /**
+     * The URL of the OTLP/HTTP traces endpoint of a collector to send the traces of the packaging steps to, for
+     * instance <code>http://localhost:4318/v1/traces</code>, as for <code>traceFile</code>.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.traceEndpoint")
+    protected String traceEndpoint;
+
+    /**
+     * Set this to <code>true</code> to only report what would be packaged, without creating the jar: the number of
+     * entries with their uncompressed and estimated compressed sizes, the duplicate entries and the largest files.
+     * This is meant to tune the <code>includes</code>, <code>excludes</code> and <code>excludeResources</code>
+     * parameters.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.plan", defaultValue = "false")
+    protected boolean plan;
+
+    /**
+     * The file where the plan mode writes the full list of planned entries, one per line. When not set, the list is
+     * only logged at debug level.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.planFile")
+    protected Path planFile;
+
+    /**
+     * The maximum size in bytes of a file packaged from the source and resource directories. Files above this size are
+     * handled according to <code>sizeLimitAction</code>. No limit when not positive.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.maxEntrySize", defaultValue = "0")
+    protected long maxEntrySize;
+
+    /**
+     * The maximum size in bytes, uncompressed, of all the files packaged from the source and resource directories.
+     * The files scanned once this size is reached are handled according to <code>sizeLimitAction</code>. No limit
+     * when not positive.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.maxTotalSize", defaultValue = "0")
+    protected long maxTotalSize;
+
+    /**
+     * What to do with the files exceeding <code>maxEntrySize</code> or <code>maxTotalSize</code>: <code>warn</code>
+     * packages them anyway, <code>skip</code> leaves them out of the jar and <code>fail</code> fails the build before
+     * the jar is written. The offending files are reported in all cases.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.sizeLimitAction", defaultValue = "warn")
+    protected String sizeLimitAction;
+
+    /**
+     * What to do with the files packaged under the same name, as the same resource in several modules of an aggregate
+     * jar: <code>first</code> keeps the first one, <code>report</code> also logs a warning listing them and
+     * <code>fail</code> fails the build before the jar is written. Checking the duplicates scans the directories once
+     * more before the jar is written.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.duplicateEntries", defaultValue = "first")
+    protected String duplicateEntries;
+
     /**
      * A flag used to disable the source procedure. This is primarily intended for usage from the command line to
      * occasionally adjust the build.
@@ -217,6 +447,37 @@ public abstract class AbstractSourceJarMojo implements Mojo {
      */
     protected ProjectManager projectManager;
 
+    /**
+     * The shared archive resources added to the archive being created.
+     */
+    private SharedArchiveResources sharedArchiveResources;
+
+    /**
+     * The size limits checked while scanning the directories of the archive being created.
+     */
+    private SizeGuard sizeGuard;
+
+    /**
+     * The duplicate entries of the archive being created.
+     */
+    private DuplicateEntries duplicates;
+
+    /**
+     * The settings of the archive being created, handed over to its writing.
+     */
+    private PackagingSettings settings;
+
+    private ScanTimings scanTimings;
+
+    private Tracing tracing = Tracing.DISABLED;
+
+    private Tracing.Span executionSpan = Tracing.DISABLED.start("package", null);
+
+    /**
+     * The directories packaged in the jars of their module, left out of the jar of the project.
+     */
+    private Set<Path> moduleDirectories = Collections.emptySet();
+
     // ----------------------------------------------------------------------
     // Public methods
     // ----------------------------------------------------------------------
@@ -234,8 +495,18 @@ public abstract class AbstractSourceJarMojo implements Mojo {
             return;
         }
 
+        // a jar of a previous execution may have failed in the background
+        BackgroundPackaging.checkFailures(session);
+
         projectManager = session.getService(ProjectManager.class);
-        doExecute();
+        tracing = Tracing.of(traceFile, traceEndpoint, getLog());
+        try (Tracing.Span span = tracing.start("package-" + getClassifier(), null)) {
+            executionSpan = span;
+            span.attribute("maven.project", project.getId());
+            doExecute();
+        } finally {
+            tracing.export();
+        }
     }
 
     protected void doExecute() {
@@ -265,15 +536,101 @@ public abstract class AbstractSourceJarMojo implements Mojo {
      */
     protected abstract List<SourceRoot> getResources(Project p) throws MojoException;
 
+    /**
+     * @param p {@link Project} not null
+     * @return the compile or test source and resource roots belonging to a module of a module source hierarchy
+     * @throws MojoException in case of an error.
+     */
+    protected List<SourceRoot> getModuleRoots(Project p) throws MojoException {
+        return Collections.emptyList();
+    }
+
     /**
      * @param p {@link Project}
      * @throws MojoException in case of an error.
      */
     protected void packageSources(Project p) throws MojoException {
         String type = p.getPackaging().type().id();
-        if (!Type.POM.equals(type) && !Type.BOM.equals(type)) {
+        if (Type.POM.equals(type) || Type.BOM.equals(type) || isClassifiedProject()) {
+            return;
+        }
+        ModulePackaging.Mode mode =
+                moduleJars != null ? ModulePackaging.Mode.of(moduleJars) : ModulePackaging.Mode.NONE;
+        Map<String, List<SourceRoot>> modules =
+                mode != ModulePackaging.Mode.NONE ? ModulePackaging.byModule(getModuleRoots(p)) : Map.of();
+        if (modules.isEmpty()) {
+            if (mode != ModulePackaging.Mode.NONE) {
+                getLog().info("No module source hierarchy: writing the jar of the project only");
+            }
             packageSources(Collections.singletonList(p));
+            return;
+        }
+
+        if (mode == ModulePackaging.Mode.ALSO) {
+            packageSources(Collections.singletonList(p));
+        } else {
+            // the roots belonging to no module are still packaged, in the jar of the project
+            moduleDirectories = ModulePackaging.directories(p, modules);
+            try {
+                if (hasRootsOutsideModules(p)) {
+                    packageSources(Collections.singletonList(p));
+                }
+            } finally {
+                moduleDirectories = Collections.emptySet();
+            }
+        }
+        for (Map.Entry<String, List<SourceRoot>> module : modules.entrySet()) {
+            packageModule(p, module.getKey(), module.getValue());
+        }
+    }
+
+    /**
+     * @param p {@link Project}
+     * @return whether some source or resource directories of the project belong to no module
+     * @throws MojoException in case of an error.
+     */
+    private boolean hasRootsOutsideModules(Project p) throws MojoException {
+        return Stream.concat(getSources(p).stream(), getResources(p).stream().map(SourceRoot::directory))
+                .filter(directory -> !isModuleDirectory(p, directory))
+                .anyMatch(directory -> Files.isDirectory(p.getBasedir().resolve(directory)));
+    }
+
+    /**
+     * @param p {@link Project}
+     * @param directory a source or resource directory of the project
+     * @return whether the directory is packaged in the jar of its module instead of the jar of the project
+     */
+    private boolean isModuleDirectory(Project p, Path directory) {
+        return moduleDirectories.contains(p.getBasedir().resolve(directory).toAbsolutePath().normalize());
+    }
+
+    /**
+     * Packages the jar of a module of a project, as the jar of the project, with the name of the module before the
+     * classifier.
+     *
+     * @param p {@link Project}
+     * @param module the name of the module
+     * @param roots the source and resource roots of the module
+     * @throws MojoException in case of an error.
+     */
+    private void packageModule(Project p, String module, List<SourceRoot> roots) throws MojoException {
+        getLog().debug("package module " + module);
+        MavenArchiver archiver = createArchiver();
+        for (SourceRoot root : roots) {
+            if (Language.RESOURCES.equals(root.language())) {
+                addResources(p, root, archiver.getArchiver());
+            } else {
+                Path sourceDirectory = p.getBasedir().resolve(root.directory());
+                if (Files.isDirectory(sourceDirectory)) {
+                    addDirectory(
+                            archiver.getArchiver(),
+                            sourceDirectory,
+                            getCombinedIncludes(null),
+                            getCombinedExcludes(null));
+                }
+            }
         }
+        packageArchive(archiver, module + "-" + getClassifier());
     }
 
     /**
@@ -281,12 +638,7 @@ public abstract class AbstractSourceJarMojo implements Mojo {
      * @throws MojoException in case of an error.
      */
     protected void packageSources(List<Project> theProjects) throws MojoException {
-        Artifact currentProjectArtifact = project.getMainArtifact().get();
-        if (!currentProjectArtifact.getClassifier().isEmpty()) {
-            getLog().warn("NOT adding sources to artifacts with classifier as Maven only supports one classifier "
-                    + "per artifact. Current artifact [" + currentProjectArtifact.key() + "] has a ["
-                    + currentProjectArtifact.getClassifier() + "] classifier.");
-
+        if (isClassifiedProject()) {
             return;
         }
 
@@ -301,57 +653,140 @@ public abstract class AbstractSourceJarMojo implements Mojo {
             }
 
             archiveProjectContent(subProject, archiver.getArchiver());
+            if (pItem != project) {
+                addSharedArchiveResources(archiver.getArchiver(), subProject);
+            }
         }
 
-        if (archiver.getArchiver().getResources().hasNext() || forceCreation) {
+        packageArchive(archiver, getClassifier());
+    }
 
-            if (useDefaultManifestFile && Files.exists(defaultManifestFile) && archive.getManifestFile() == null) {
-                getLog().info("Adding existing MANIFEST to archive. Found under: " + defaultManifestFile);
-                archive.setManifestFile(defaultManifestFile);
-            }
+    /**
+     * @return whether the main artifact of the project has a classifier, which leaves no classifier for the sources
+     */
+    private boolean isClassifiedProject() {
+        // a pom project, as the root of an aggregate, has no main artifact
+        Artifact currentProjectArtifact = project.getMainArtifact().orElse(null);
+        if (currentProjectArtifact != null && !currentProjectArtifact.getClassifier().isEmpty()) {
+            getLog().warn("NOT adding sources to artifacts with classifier as Maven only supports one classifier "
+                    + "per artifact. Current artifact [" + currentProjectArtifact.key() + "] has a ["
+                    + currentProjectArtifact.getClassifier() + "] classifier.");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes and attaches a jar of the entries added to the archiver, or reports its plan.
+     *
+     * @param archiver the archiver, with the entries of the jar
+     * @param classifier the classifier of the jar
+     * @throws MojoException in case of an error.
+     */
+    private void packageArchive(MavenArchiver archiver, String classifier) throws MojoException {
+        PackagingSettings settings = this.settings;
+        // the archiver iterates the directory trees in order, but they can be scanned in parallel, the longest first
+        Path outputFile = outputDirectory.resolve(finalName + "-" + classifier + getExtension());
+        scanTimings = ScanTimings.of(outputFile);
+        if (archiver.getArchiver() instanceof SourceJarArchiver) {
+            ((SourceJarArchiver) archiver.getArchiver())
+                    .prescan(WorkerBudget.of(session), scanTimings, tracing, executionSpan);
+        }
+
+        if (sizeGuard.isEnabled() || (duplicates.isChecked() && !plan)) {
+            checkEntries(archiver.getArchiver());
+        }
 
-            Path outputFile = outputDirectory.resolve(finalName + "-" + getClassifier() + getExtension());
+        if (plan) {
+            reportPlan(archiver.getArchiver(), outputFile);
+            return;
+        }
 
+        if (archiver.getArchiver().getResources().hasNext() || forceCreation) {
+            // a previous execution may still be writing the same jar
+            BackgroundPackaging.await(session, outputFile);
+
+            List<IncrementalJarUpdater.Input> inputs = null;
+            IncrementalJarUpdater updater = null;
+            InstalledSources installed = null;
+            String inputsFingerprint = null;
             try {
-                archiver.setOutputFile(outputFile.toFile());
-                archive.setForced(forceCreation);
+                if (incremental || (reuseInstalled && attach)) {
+                    inputs = getIncrementalInputs(archiver.getArchiver());
+                }
 
-                getLog().debug("create archive " + outputFile);
-                archiver.createArchive(session, project, archive);
+                if (incremental) {
+                    updater = createIncrementalUpdater(archiver, settings, outputFile, inputs);
+                }
+
+                if (reuseInstalled && attach && inputs != null) {
+                    installed = new InstalledSources(getInstalledFile(classifier), getLog());
+                    // the updater reads the changed files once, for their hash and their entry
+                    inputsFingerprint = InstalledSources.fingerprint(
+                            getIncrementalFingerprint(settings),
+                            inputs,
+                            archiver.getArchiver().getLastModifiedTime() != null,
+                            updater != null ? updater::contentHash : InstalledSources::contentHash);
+                    if (installed.matches(inputsFingerprint)) {
+                        getLog().info("Sources unchanged since " + installed.getInstalledFile() + " was installed: "
+                                + "attaching it in place of building " + relative(outputFile));
+                        discardResources(archiver.getArchiver());
+                        close(updater);
+                        installed.copyTo(outputFile);
+                        // the install writes the jar again, with a new time
+                        installed.recordWhenInstalled(session, inputsFingerprint, outputFile);
+                        attach(outputFile, classifier);
+                        return;
+                    }
+                }
+
+                if (async) {
+                    snapshotResources(archiver.getArchiver());
+                }
             } catch (ArchiverException e) {
+                close(updater);
                 throw new MojoException("Error creating source archive: " + e.getMessage(), e);
+            } catch (IOException e) {
+                close(updater);
+                throw new MojoException("Error updating source archive: " + e.getMessage(), e);
+            }
+
+            if (async) {
+                List<IncrementalJarUpdater.Input> packagedInputs = inputs;
+                IncrementalJarUpdater packagingUpdater = updater;
+                InstalledSources installedSources = installed;
+                String fingerprint = inputsFingerprint;
+                // the next jar of the execution has scans of its own
+                ScanTimings timings = scanTimings;
+                getLog().debug("write archive " + outputFile + " in the background");
+                BackgroundPackaging.of(session)
+                        .submit(
+                                project,
+                                outputFile,
+                                () -> writeArchive(
+                                        archiver,
+                                        settings,
+                                        outputFile,
+                                        packagedInputs,
+                                        packagingUpdater,
+                                        installedSources,
+                                        fingerprint,
+                                        timings),
+                                getLog());
+            } else {
+                writeArchive(
+                        archiver,
+                        settings,
+                        outputFile,
+                        inputs,
+                        updater,
+                        installed,
+                        inputsFingerprint,
+                        scanTimings);
             }
 
             if (attach) {
-                ProducedArtifact artifact = session.createProducedArtifact(
-                        project.getGroupId(),
-                        project.getArtifactId(),
-                        project.getVersion(),
-                        getClassifier(),
-                        null,
-                        getType());
-                boolean requiresAttach = true;
-                for (Artifact attachedArtifact : projectManager.getAttachedArtifacts(project)) {
-                    if (Objects.equals(artifact.key(), attachedArtifact.key())) {
-                        Path attachedFile = session.getService(ArtifactManager.class)
-                                .getPath(attachedArtifact)
-                                .orElse(null);
-                        if (attachedFile != null && !outputFile.equals(attachedFile)) {
-                            getLog().error("Artifact " + attachedArtifact.key()
-                                    + " already attached to a file " + relative(attachedFile) + ": attach to "
-                                    + relative(outputFile) + " should be done with another classifier");
-                            throw new MojoException("Presumably you have configured maven-source-plugin "
-                                    + "to execute twice in your build to different output files. "
-                                    + "You have to configure a classifier for at least one of them.");
-                        }
-                        requiresAttach = false;
-                        getLog().info("Artifact " + attachedArtifact.key() + " already attached to "
-                                + relative(outputFile) + ": ignoring same re-attach (same artifact, same file)");
-                    }
-                }
-                if (requiresAttach) {
-                    projectManager.attachArtifact(project, artifact, outputFile);
-                }
+                attach(outputFile, classifier);
             } else {
                 getLog().info("NOT adding java-sources to attached artifacts list.");
             }
@@ -360,6 +795,375 @@ public abstract class AbstractSourceJarMojo implements Mojo {
         }
     }
 
+    /**
+     * @param archiver the archiver, with the entries of the jar
+     * @param settings the settings of the jar
+     * @param outputFile the jar
+     * @param inputs the packaged files, <code>null</code> if unknown
+     * @return the updater of the jar, <code>null</code> if the packaged files are unknown
+     * @throws IOException in case of an error
+     */
+    private IncrementalJarUpdater createIncrementalUpdater(
+            MavenArchiver archiver,
+            PackagingSettings settings,
+            Path outputFile,
+            List<IncrementalJarUpdater.Input> inputs)
+            throws IOException {
+        boolean reproducible = archiver.getArchiver().getLastModifiedTime() != null;
+        IncrementalJarUpdater updater = new IncrementalJarUpdater(
+                outputFile, getIncrementalFingerprint(settings), reproducible, settings.buffers(), getLog());
+        if (inputs == null) {
+            updater.deleteState();
+            return null;
+        }
+        updater.setCompression(settings.compression());
+        updater.setMappedThreshold(settings.mappedReadThreshold());
+        updater.setLocalityOrder(settings.localityOrder());
+        updater.setSourceIndex(settings.sourceIndex(), archiver.getArchiver().getLastModifiedTime());
+        return updater;
+    }
+
+    /**
+     * Writes the jar, updating it if incremental. Only the settings of the jar are read, not the ones of the goal,
+     * which change with the next jar of the execution.
+     *
+     * @param archiver the archiver, with the entries of the jar
+     * @param settings the settings of the jar
+     * @param outputFile the jar
+     * @param inputs the packaged files, <code>null</code> if unknown
+     * @param updater the updater of the jar if incremental, released once the jar is written, or <code>null</code>
+     * @param installed the jar in the local repository to record the inputs of once installed, or <code>null</code>
+     * @param inputsFingerprint the fingerprint of the inputs to record
+     * @param timings the timings of the scans of the directories of the jar
+     * @throws MojoException in case of an error.
+     */
+    private void writeArchive(
+            MavenArchiver archiver,
+            PackagingSettings settings,
+            Path outputFile,
+            List<IncrementalJarUpdater.Input> inputs,
+            IncrementalJarUpdater updater,
+            InstalledSources installed,
+            String inputsFingerprint,
+            ScanTimings timings)
+            throws MojoException {
+        Tracing tracing = settings.tracing();
+        Tracing.Span executionSpan = settings.span();
+        ScanStatistics statistics = settings.statistics();
+        ScatterBuffers scatterBuffers = settings.buffers();
+        try {
+            if (updater != null && updater.update(inputs)) {
+                // the update sorts and indexes the entries itself
+                discardResources(archiver.getArchiver());
+                executionSpan.attribute("files.read", updater.getFileReads());
+            } else {
+                getLog().debug("create archive " + outputFile);
+                SourcePackager.write(archiver, session, project, settings, outputFile);
+            }
+
+            if (updater != null) {
+                updater.recordState(inputs);
+                getLog().debug(updater.getFileReads() + " files read for " + inputs.size() + " inputs");
+            }
+
+            if (installed != null) {
+                installed.recordWhenInstalled(session, inputsFingerprint, outputFile);
+            }
+
+            timings.write();
+            if (async) {
+                // the execution was exported when it ended
+                tracing.export();
+            }
+
+            getLog().debug(statistics.getStatistics());
+            statistics.getPatternStatistics().forEach(getLog()::debug);
+            if (scatterBuffers.getSpilledBytes() > 0) {
+                getLog().info(scatterBuffers.getStatistics());
+            } else if (settings.isRecompressed()) {
+                getLog().debug(scatterBuffers.getStatistics());
+            }
+        } catch (ArchiverException e) {
+            throw new MojoException("Error creating source archive: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new MojoException("Error updating source archive: " + e.getMessage(), e);
+        } finally {
+            close(updater);
+        }
+    }
+
+    /**
+     * Replaces the directories to scan by the entries they hold now, so that the archive written in the background
+     * has these entries whatever happens in the directories meanwhile.
+     *
+     * @param archiver {@link Archiver}
+     * @throws ArchiverException in case of an error.
+     * @throws IOException in case of an error.
+     */
+    private static void snapshotResources(Archiver archiver) throws ArchiverException, IOException {
+        List<ArchiveEntry> entries = new ArrayList<>();
+        ResourceIterator iterator = archiver.getResources();
+        while (iterator.hasNext()) {
+            entries.add(iterator.next());
+        }
+        discardResources(archiver);
+        for (ArchiveEntry entry : entries) {
+            archiver.addResource(entry.getResource(), entry.getName(), entry.getMode());
+        }
+    }
+
+    /**
+     * Attaches a sources jar to the project.
+     *
+     * @param file the jar
+     * @param classifier the classifier of the jar
+     * @throws MojoException if another file is already attached with the same classifier
+     */
+    private void attach(Path file, String classifier) throws MojoException {
+        try (Tracing.Span span = tracing.start("attach", executionSpan)) {
+            span.attribute("file", file.toString());
+            doAttach(file, classifier);
+        }
+    }
+
+    private void doAttach(Path file, String classifier) throws MojoException {
+        ProducedArtifact artifact = createArtifact(classifier);
+        boolean requiresAttach = true;
+        for (Artifact attachedArtifact : projectManager.getAttachedArtifacts(project)) {
+            if (Objects.equals(artifact.key(), attachedArtifact.key())) {
+                Path attachedFile = session.getService(ArtifactManager.class)
+                        .getPath(attachedArtifact)
+                        .orElse(null);
+                if (attachedFile != null && !file.equals(attachedFile)) {
+                    getLog().error("Artifact " + attachedArtifact.key()
+                            + " already attached to a file " + relative(attachedFile) + ": attach to "
+                            + relative(file) + " should be done with another classifier");
+                    throw new MojoException("Presumably you have configured maven-source-plugin "
+                            + "to execute twice in your build to different output files. "
+                            + "You have to configure a classifier for at least one of them.");
+                }
+                requiresAttach = false;
+                getLog().info("Artifact " + attachedArtifact.key() + " already attached to "
+                        + relative(file) + ": ignoring same re-attach (same artifact, same file)");
+            }
+        }
+        if (requiresAttach) {
+            projectManager.attachArtifact(project, artifact, file);
+        }
+    }
+
+    /**
+     * @param classifier the classifier of the artifact
+     * @return the sources artifact of the project
+     */
+    private ProducedArtifact createArtifact(String classifier) {
+        return session.createProducedArtifact(
+                project.getGroupId(),
+                project.getArtifactId(),
+                project.getVersion(),
+                classifier,
+                null,
+                getType());
+    }
+
+    /**
+     * @param classifier the classifier of the jar
+     * @return the path of the sources jar in the local repository
+     */
+    private Path getInstalledFile(String classifier) {
+        return session.getLocalRepository()
+                .getPath()
+                .resolve(session.getPathForLocalArtifact(createArtifact(classifier)));
+    }
+
+    /**
+     * Scans the directories of the archive up front, so that the files exceeding the size limits and the duplicate
+     * entries are reported, and the build failed if so configured, before anything is written.
+     *
+     * @param archiver {@link Archiver}
+     * @throws MojoException in case of an error.
+     */
+    private void checkEntries(Archiver archiver) throws MojoException {
+        // the plan lists the duplicates itself
+        boolean checkDuplicates = duplicates.isChecked() && !plan;
+        String duplicateBehavior = archiver.getDuplicateBehavior();
+        try {
+            if (checkDuplicates) {
+                // the archiver would skip the duplicates before they are seen
+                archiver.setDuplicateBehavior(Archiver.DUPLICATES_ADD);
+            }
+            ResourceIterator iterator = archiver.getResources();
+            while (iterator.hasNext()) {
+                ArchiveEntry entry = iterator.next();
+                if (checkDuplicates && entry.getType() == ArchiveEntry.FILE) {
+                    PlexusIoResource resource = entry.getResource();
+                    duplicates.add(
+                            entry.getName(),
+                            resource instanceof FileSupplier ? ((FileSupplier) resource).getFile() : null);
+                }
+            }
+        } catch (ArchiverException e) {
+            throw new MojoException("Error scanning source archive content: " + e.getMessage(), e);
+        } finally {
+            archiver.setDuplicateBehavior(duplicateBehavior);
+        }
+        try {
+            sizeGuard.report(getLog());
+            if (checkDuplicates) {
+                duplicates.report(getLog());
+            }
+        } catch (MojoException e) {
+            try {
+                discardResources(archiver);
+            } catch (IOException ignored) {
+                // the build fails anyway
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reports the entries of the archive in place of creating it.
+     *
+     * @param archiver {@link Archiver}
+     * @param outputFile the jar
+     * @throws MojoException in case of an error.
+     */
+    private void reportPlan(Archiver archiver, Path outputFile) throws MojoException {
+        PackagingPlan packagingPlan = new PackagingPlan();
+        String duplicateBehavior = archiver.getDuplicateBehavior();
+        try {
+            // also list the entries the archiver would skip
+            archiver.setDuplicateBehavior(Archiver.DUPLICATES_ADD);
+            ResourceIterator iterator = archiver.getResources();
+            while (iterator.hasNext()) {
+                ArchiveEntry entry = iterator.next();
+                if (entry.getType() == ArchiveEntry.FILE) {
+                    PlexusIoResource resource = entry.getResource();
+                    File file = resource instanceof FileSupplier ? ((FileSupplier) resource).getFile() : null;
+                    packagingPlan.add(entry.getName(), file, resource.getSize());
+                }
+            }
+
+            getLog().info("Plan for " + outputFile.getFileName() + " (not created):");
+            packagingPlan.report(getLog(), 10);
+            if (planFile != null) {
+                packagingPlan.write(planFile);
+                getLog().info("Planned entries written to " + planFile);
+            }
+            discardResources(archiver);
+        } catch (ArchiverException | IOException e) {
+            throw new MojoException("Error planning source archive: " + e.getMessage(), e);
+        } finally {
+            archiver.setDuplicateBehavior(duplicateBehavior);
+            packagingPlan.close();
+        }
+    }
+
+    /**
+     * @param archiver {@link Archiver}
+     * @return the files to package, or <code>null</code> if some entries are not plain files
+     * @throws ArchiverException in case of an error.
+     */
+    private List<IncrementalJarUpdater.Input> getIncrementalInputs(Archiver archiver) throws ArchiverException {
+        List<IncrementalJarUpdater.Input> inputs = new ArrayList<>();
+        ResourceIterator iterator = archiver.getResources();
+        while (iterator.hasNext()) {
+            ArchiveEntry entry = iterator.next();
+            if (entry.getType() == ArchiveEntry.FILE) {
+                if (!(entry.getResource() instanceof FileSupplier)) {
+                    getLog().debug("Entry " + entry.getName() + " is not a file: incremental update disabled");
+                    return null;
+                }
+                // the attributes read during the scan
+                PlexusIoResource resource = entry.getResource();
+                inputs.add(new IncrementalJarUpdater.Input(
+                        entry.getName(),
+                        ((FileSupplier) resource).getFile(),
+                        resource.getSize(),
+                        resource.getLastModified()));
+            }
+        }
+        return inputs;
+    }
+
+    /**
+     * @param settings the settings of the jar
+     * @return a fingerprint of the configuration of the archive entries not coming from the packaged files
+     */
+    private String getIncrementalFingerprint(PackagingSettings settings) {
+        MavenArchiveConfiguration archive = settings.archive();
+        StringBuilder configuration = new StringBuilder()
+                .append(project.getId())
+                .append('|')
+                .append(describe(project.getPomPath()))
+                .append('|')
+                .append(outputTimestamp)
+                .append('|')
+                .append(archive.isAddMavenDescriptor())
+                .append('|')
+                .append(archive.getManifestEntries())
+                .append('|')
+                .append(describe(archive.getManifestFile()))
+                .append('|')
+                .append(useDefaultManifestFile ? describe(defaultManifestFile) : "")
+                .append('|')
+                .append(settings.sourceIndex())
+                .append('|')
+                .append(settings.localityOrder())
+                .append('|')
+                .append(settings.compression());
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(configuration.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return whether the entries are sorted in locality order
+     * @throws MojoException if the order is unknown
+     */
+    private boolean isLocalityOrder() throws MojoException {
+        if (entryOrder == null || "default".equals(entryOrder)) {
+            return false;
+        }
+        if ("locality".equals(entryOrder)) {
+            return true;
+        }
+        throw new MojoException("Invalid entry order '" + entryOrder + "': expected default or locality");
+    }
+
+    private static String describe(Path file) {
+        if (file == null) {
+            return "";
+        }
+        File f = file.toFile();
+        return f.getAbsolutePath() + '@' + f.length() + '@' + f.lastModified();
+    }
+
+    /**
+     * @param archiver {@link Archiver}
+     * @throws IOException in case of an error.
+     */
+    private static void discardResources(Archiver archiver) throws IOException {
+        if (archiver instanceof SourceJarArchiver) {
+            ((SourceJarArchiver) archiver).discardResources();
+        }
+    }
+
+    private static void close(IncrementalJarUpdater updater) {
+        if (updater != null) {
+            try {
+                updater.close();
+            } catch (IOException e) {
+                // already failing or done
+            }
+        }
+    }
+
     private String relative(Path to) {
         Path basedir = project.getBasedir().toAbsolutePath();
         return basedir.relativize(to.toAbsolutePath()).toString();
@@ -380,39 +1184,64 @@ public abstract class AbstractSourceJarMojo implements Mojo {
             }
         }
 
-        for (Path sourceDirectory : getSources(project)) {
-            if (Files.exists(sourceDirectory)) {
+        List<Path> sources;
+        List<SourceRoot> resources;
+        try (Tracing.Span span = tracing.start("resolve-roots", executionSpan)) {
+            sources = getSources(project);
+            resources = getResources(project);
+            span.attribute("maven.project", project.getId()).attribute("roots", sources.size() + resources.size());
+        }
+
+        for (Path sourceDirectory : sources) {
+            if (Files.isDirectory(sourceDirectory) && !isModuleDirectory(project, sourceDirectory)) {
                 addDirectory(archiver, sourceDirectory, getCombinedIncludes(null), getCombinedExcludes(null));
             }
         }
 
-        // MAPI: this should be taken from the resources plugin
-        for (SourceRoot resource : getResources(project)) {
+        for (SourceRoot resource : resources) {
+            if (SharedArchiveResources.isShared(resource.directory())) {
+                // added once per archive, skipping the entries another project of the archive already contributed
+                Path directory = project.getBasedir().resolve(resource.directory());
+                if (Files.isDirectory(directory) && sharedArchiveResources.add(directory)) {
+                    addSharedDirectory(archiver, directory);
+                }
+            } else if (!isModuleDirectory(project, resource.directory())) {
+                addResources(project, resource, archiver);
+            }
+        }
+    }
 
-            Path sourceDirectory = resource.directory();
-            Path absoluteSourceDirectory = project.getBasedir().resolve(sourceDirectory);
+    /**
+     * @param project {@link Project}
+     * @param resource the resource root
+     * @param archiver {@link Archiver}
+     * @throws MojoException in case of an error.
+     */
+    private void addResources(Project project, SourceRoot resource, Archiver archiver) throws MojoException {
+        // MAPI: this should be taken from the resources plugin
+        Path sourceDirectory = resource.directory();
+        Path absoluteSourceDirectory = project.getBasedir().resolve(sourceDirectory);
 
-            if (!Files.exists(absoluteSourceDirectory)) {
-                continue;
-            }
+        if (!Files.isDirectory(absoluteSourceDirectory)) {
+            return;
+        }
 
-            List<String> resourceIncludes = resource.includes();
+        List<String> resourceIncludes = resource.includes();
 
-            String[] combinedIncludes = getCombinedIncludes(resourceIncludes);
+        String[] combinedIncludes = getCombinedIncludes(resourceIncludes);
 
-            List<String> resourceExcludes = resource.excludes();
+        List<String> resourceExcludes = resource.excludes();
 
-            String[] combinedExcludes = getCombinedExcludes(resourceExcludes);
+        String[] combinedExcludes = getCombinedExcludes(resourceExcludes);
 
-            String targetPath = resource.targetPath().map(Path::toString).orElse(null);
-            if (targetPath != null) {
-                if (!targetPath.trim().endsWith("/")) {
-                    targetPath += "/";
-                }
-                addDirectory(archiver, absoluteSourceDirectory, targetPath, combinedIncludes, combinedExcludes);
-            } else {
-                addDirectory(archiver, absoluteSourceDirectory, combinedIncludes, combinedExcludes);
+        String targetPath = resource.targetPath().map(Path::toString).orElse(null);
+        if (targetPath != null) {
+            if (!targetPath.trim().endsWith("/")) {
+                targetPath += "/";
             }
+            addDirectory(archiver, absoluteSourceDirectory, targetPath, combinedIncludes, combinedExcludes);
+        } else {
+            addDirectory(archiver, absoluteSourceDirectory, combinedIncludes, combinedExcludes);
         }
     }
 
@@ -421,24 +1250,91 @@ public abstract class AbstractSourceJarMojo implements Mojo {
      * @throws MojoException in case of an error.
      */
     protected MavenArchiver createArchiver() throws MojoException {
+        if (async) {
+            // the archiver is shared by all the executions: a jar written in the background needs its own
+            jarArchiver = new SourceJarArchiver();
+        }
         MavenArchiver archiver = new MavenArchiver();
         archiver.setArchiver(jarArchiver);
-        archiver.setCreatedBy("Maven Source Plugin", "org.apache.maven.plugins", "maven-source-plugin");
+        archiver.setCreatedBy(SourcePackager.CREATED_BY, "org.apache.maven.plugins", "maven-source-plugin");
         archiver.setBuildJdkSpecDefaultEntry(false);
 
         // configure for Reproducible Builds based on outputTimestamp value
         archiver.configureReproducibleBuild(outputTimestamp);
 
-        projectManager
-                .getEnabledSourceRoots(project, ProjectScope.MAIN, Language.RESOURCES)
-                .map(SourceRoot::directory)
-                .filter(directory -> directory.endsWith("maven-shared-archive-resources"))
-                .forEach(directory -> addDirectory(
-                        archiver.getArchiver(), directory, getCombinedIncludes(null), getCombinedExcludes(null)));
+        Path manifestFile = null;
+        if (useDefaultManifestFile && Files.exists(defaultManifestFile) && archive.getManifestFile() == null) {
+            getLog().info("Adding existing MANIFEST to archive. Found under: " + defaultManifestFile);
+            manifestFile = defaultManifestFile;
+        }
+        Compression compression = Compression.of(compressionLevel, compressionStrategy, storedFiles);
+        // counting the matches of each pattern matches every path again
+        ScanStatistics scanStatistics = new ScanStatistics(getLog().isDebugEnabled());
+        // a copy for this jar, which may be written in the background while the next one is set up; an invalid entry
+        // order fails before scanning
+        settings = new PackagingSettings(
+                ArchiveWriter.of(archiveWriter),
+                compression,
+                PackagingSettings.copy(archive, manifestFile, forceCreation),
+                isLocalityOrder(),
+                sourceIndex,
+                mappedReadThreshold,
+                blockDeflateThreshold,
+                // the memory of the buffers is shared with the other executions, the spill files are in the module
+                new ScatterBuffers(outputDirectory, ScatterBuffers.pool(session, compressionMemory)),
+                WorkerBudget.of(session),
+                scanStatistics,
+                tracing,
+                executionSpan);
+        SourcePackager.configure(jarArchiver, settings);
+
+        sizeGuard = new SizeGuard(
+                maxEntrySize,
+                maxTotalSize,
+                sizeLimitAction != null ? SizeGuard.Action.of(sizeLimitAction) : SizeGuard.Action.WARN);
+        duplicates = new DuplicateEntries(duplicateEntries != null
+                ? DuplicateEntries.Policy.of(duplicateEntries)
+                : DuplicateEntries.Policy.FIRST);
+        sharedArchiveResources = new SharedArchiveResources(session, projectManager, getLog());
+        addSharedArchiveResources(archiver.getArchiver(), project);
 
         return archiver;
     }
 
+    /**
+     * Adds the <code>maven-shared-archive-resources</code> of a project not yet added to the archive, skipping the
+     * files already contributed by another project of the archive.
+     *
+     * @param archiver {@link Archiver}
+     * @param p {@link Project}
+     * @throws MojoException in case of an error.
+     */
+    protected void addSharedArchiveResources(Archiver archiver, Project p) throws MojoException {
+        for (Path directory : sharedArchiveResources.getDirectories(p)) {
+            addSharedDirectory(archiver, directory);
+        }
+    }
+
+    /**
+     * @param archiver {@link Archiver}
+     * @param directory a <code>maven-shared-archive-resources</code> directory
+     * @throws MojoException in case of an error.
+     */
+    private void addSharedDirectory(Archiver archiver, Path directory) throws MojoException {
+        try {
+            getLog().debug("add shared archive resources " + directory + " to archiver");
+            SourcePackager.addDirectory(
+                    archiver,
+                    directory,
+                    null,
+                    getCombinedIncludes(null),
+                    getCombinedExcludes(null),
+                    getSelectors(sharedArchiveResources.getSelector()));
+        } catch (ArchiverException e) {
+            throw new MojoException("Error adding directory to source archive.", e);
+        }
+    }
+
     /**
      * @param archiver {@link Archiver}
      * @param sourceDirectory {@link Path}
@@ -450,7 +1346,7 @@ public abstract class AbstractSourceJarMojo implements Mojo {
             throws MojoException {
         try {
             getLog().debug("add directory " + sourceDirectory + " to archiver");
-            archiver.addFileSet(DefaultFileSet.fileSet(sourceDirectory.toFile()).includeExclude(pIncludes, pExcludes));
+            SourcePackager.addDirectory(archiver, sourceDirectory, null, pIncludes, pExcludes, getSelectors());
         } catch (ArchiverException e) {
             throw new MojoException("Error adding directory to source archive.", e);
         }
@@ -469,14 +1365,25 @@ public abstract class AbstractSourceJarMojo implements Mojo {
             throws MojoException {
         try {
             getLog().debug("add directory " + sourceDirectory + " to archiver with prefix " + prefix);
-            archiver.addFileSet(DefaultFileSet.fileSet(sourceDirectory.toFile())
-                    .prefixed(prefix)
-                    .includeExclude(pIncludes, pExcludes));
+            SourcePackager.addDirectory(archiver, sourceDirectory, prefix, pIncludes, pExcludes, getSelectors());
         } catch (ArchiverException e) {
             throw new MojoException("Error adding directory to source archive.", e);
         }
     }
 
+    /**
+     * @param selectors the selectors of a directory
+     * @return the selectors, then the check of the size limits if any on the files they keep, so that a skipped file
+     *     does not count in the total size
+     */
+    private List<FileSelector> getSelectors(FileSelector... selectors) {
+        List<FileSelector> fileSelectors = new ArrayList<>(Arrays.asList(selectors));
+        if (sizeGuard != null && sizeGuard.isEnabled()) {
+            fileSelectors.add(sizeGuard.getSelector());
+        }
+        return fileSelectors;
+    }
+
     /**
      * @return The extension {@code .jar}
      */
@@ -500,29 +1407,14 @@ public abstract class AbstractSourceJarMojo implements Mojo {
     }
 
     /**
-     * Combines the includes parameter and additional includes. Defaults to {@link #DEFAULT_INCLUDES} If the
-     * additionalIncludes parameter is null, it is not added to the combined includes.
+     * Combines the includes parameter and additional includes. Defaults to all files. If the additionalIncludes
+     * parameter is null, it is not added to the combined includes.
      *
      * @param additionalIncludes The includes specified in the pom resources section
      * @return The combined array of includes.
      */
     private String[] getCombinedIncludes(List<String> additionalIncludes) {
-        List<String> combinedIncludes = new ArrayList<>();
-
-        if (includes != null && includes.length > 0) {
-            combinedIncludes.addAll(Arrays.asList(includes));
-        }
-
-        if (additionalIncludes != null && !additionalIncludes.isEmpty()) {
-            combinedIncludes.addAll(additionalIncludes);
-        }
-
-        // If there are no other includes, use the default.
-        if (combinedIncludes.isEmpty()) {
-            combinedIncludes.addAll(Arrays.asList(DEFAULT_INCLUDES));
-        }
-
-        return combinedIncludes.toArray(new String[0]);
+        return SourcePackager.combineIncludes(includes != null ? Arrays.asList(includes) : null, additionalIncludes);
     }
 
     /**
@@ -533,25 +1425,8 @@ public abstract class AbstractSourceJarMojo implements Mojo {
      * @return the combined list of excludes
      */
     private String[] getCombinedExcludes(List<String> additionalExcludes) {
-        List<String> combinedExcludes = new ArrayList<>();
-
-        if (useDefaultExcludes) {
-            combinedExcludes.addAll(FileUtils.getDefaultExcludesAsList());
-        }
-
-        if (excludes != null && excludes.length > 0) {
-            combinedExcludes.addAll(Arrays.asList(excludes));
-        }
-
-        if (additionalExcludes != null && !additionalExcludes.isEmpty()) {
-            combinedExcludes.addAll(additionalExcludes);
-        }
-
-        if (combinedExcludes.isEmpty()) {
-            combinedExcludes.addAll(Arrays.asList(DEFAULT_EXCLUDES));
-        }
-
-        return combinedExcludes.toArray(new String[0]);
+        return SourcePackager.combineExcludes(
+                useDefaultExcludes, excludes != null ? Arrays.asList(excludes) : null, additionalExcludes);
     }
 
     /**
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.apache.maven.api.Project;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.plugin.MojoException;
+import org.apache.maven.shared.archiver.MavenArchiver;
+import org.codehaus.plexus.archiver.ArchiverException;
+
+/**
+ * Writes the jar of the entries added to the archiver. The archiver always scans the directories, so that includes,
+ * excludes and duplicates are handled the same whatever the writer.
+ *
+ * @since 4.0.0
+ */
+interface ArchiveWriter {
+
+    /**
+     * Writes a jar.
+     *
+     * @param archiver the archiver, with the entries of the jar
+     * @param session the session, or <code>null</code> without a project
+     * @param project the project, for the manifest and the Maven descriptor, or <code>null</code> for a jar with only
+     *     the manifest entries of the configuration, as bundled by the {@link SourceBundler}
+     * @param settings the settings of the jar, with the configuration of the manifest and the Maven descriptor
+     * @param outputFile the jar
+     * @throws ArchiverException in case of an error
+     * @throws IOException in case of an error
+     */
+    void write(MavenArchiver archiver, Session session, Project project, PackagingSettings settings, Path outputFile)
+            throws ArchiverException, IOException;
+
+    /**
+     * Whether the writer writes the jar in a single pass: the entries in their order, deflated with the level and
+     * strategy of the compression, followed by the source index. Otherwise the archiver deflates with the default
+     * ones, and the written jar is copied again to compress, sort or index its entries.
+     *
+     * @return whether the written jar needs no other pass
+     */
+    default boolean isSinglePass() {
+        return false;
+    }
+
+    /**
+     * @param name the name of a writer: <code>plexus</code> or <code>zip</code>
+     * @return the writer
+     * @throws MojoException if the name is unknown
+     */
+    static ArchiveWriter of(String name) throws MojoException {
+        if (name == null || "plexus".equals(name)) {
+            return new PlexusArchiveWriter();
+        }
+        if ("zip".equals(name)) {
+            return new ZipArchiveWriter();
+        }
+        throw new MojoException("Invalid archive writer '" + name + "': expected plexus or zip");
+    }
+}
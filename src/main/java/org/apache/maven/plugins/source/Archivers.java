@@ -30,6 +30,6 @@ public class Archivers {
     @Singleton
     @Named("jar")
     static JarArchiver createJarArchiver() {
-        return new JarArchiver();
+        return new SourceJarArchiver();
     }
 }
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.api.Event;
+import org.apache.maven.api.EventType;
+import org.apache.maven.api.Listener;
+import org.apache.maven.api.MojoExecution;
+import org.apache.maven.api.Project;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.SessionData;
+import org.apache.maven.api.plugin.Log;
+import org.apache.maven.api.plugin.MojoException;
+
+/**
+ * The jars written in the background while the build of their module goes on. A jar is awaited before the install
+ * or deploy of any module, so that they never copy a partial jar, when its module ends, and at the latest when the
+ * session ends.
+ * <p>
+ * A jar which failed to be written is deleted, so that nothing uses a partial jar: the install or deploy of its
+ * module then fails. As Maven only logs the errors of the listeners of the build events, the failure is also kept to
+ * fail the next execution of the plugin in the session.
+ *
+ * @since 4.0.0
+ */
+final class BackgroundPackaging implements Listener {
+    private static final SessionData.Key<BackgroundPackaging> KEY = SessionData.key(BackgroundPackaging.class);
+
+    private static final Set<String> PUBLISHING = Set.of("install", "deploy");
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private record Packaging(Project project, Path jarFile, Future<?> future, Log log) {}
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "maven-source-background-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<Path, Packaging> pending = new LinkedHashMap<>();
+
+    private final List<MojoException> failures = new ArrayList<>();
+
+    /**
+     * @param session the session
+     * @return the background packagings of the session, listening to its events
+     */
+    static BackgroundPackaging of(Session session) {
+        return session.getData().computeIfAbsent(KEY, () -> {
+            BackgroundPackaging packaging = new BackgroundPackaging();
+            session.registerListener(packaging);
+            return packaging;
+        });
+    }
+
+    /**
+     * Waits for the writing of a jar in the background, if any.
+     *
+     * @param session the session
+     * @param jarFile the jar
+     * @throws MojoException if the jar could not be written
+     */
+    static void await(Session session, Path jarFile) throws MojoException {
+        BackgroundPackaging packaging = session.getData().get(KEY);
+        if (packaging != null) {
+            packaging.await(jarFile);
+        }
+    }
+
+    /**
+     * Fails with the jars which failed to be written while awaited by the build events, once.
+     *
+     * @param session the session
+     * @throws MojoException if a jar could not be written
+     */
+    static void checkFailures(Session session) throws MojoException {
+        BackgroundPackaging packaging = session.getData().get(KEY);
+        if (packaging != null) {
+            packaging.checkFailures();
+        }
+    }
+
+    /**
+     * Starts writing a jar, after the previous writing of the same jar if any.
+     *
+     * @param project the project of the jar
+     * @param jarFile the jar
+     * @param task the writing of the jar
+     * @param log the log of the execution writing the jar
+     * @throws MojoException if the previous writing of the jar failed
+     */
+    void submit(Project project, Path jarFile, Runnable task, Log log) throws MojoException {
+        await(jarFile);
+        synchronized (pending) {
+            pending.put(jarFile, new Packaging(project, jarFile, executor.submit(task), log));
+        }
+    }
+
+    /**
+     * Waits for the writing of a jar, if it is being written.
+     *
+     * @param jarFile the jar
+     * @throws MojoException if the jar could not be written
+     */
+    void await(Path jarFile) throws MojoException {
+        Packaging packaging;
+        synchronized (pending) {
+            packaging = pending.remove(jarFile);
+        }
+        if (packaging != null) {
+            await(packaging);
+        }
+    }
+
+    private void checkFailures() throws MojoException {
+        MojoException failure = null;
+        synchronized (failures) {
+            for (MojoException e : failures) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+            failures.clear();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        EventType type = event.getType();
+        try {
+            if (type == EventType.MOJO_STARTED
+                    && event.getMojoExecution().map(BackgroundPackaging::isPublishing).orElse(false)) {
+                awaitAll(null);
+            } else if (type == EventType.PROJECT_SUCCEEDED || type == EventType.PROJECT_FAILED) {
+                event.getProject().ifPresent(this::awaitAll);
+            } else if (type == EventType.SESSION_ENDED) {
+                try {
+                    awaitAll(null);
+                } finally {
+                    executor.shutdown();
+                }
+            }
+        } catch (MojoException e) {
+            // Maven would only log it: fail the next execution of the plugin instead
+            synchronized (failures) {
+                failures.add(e);
+            }
+        }
+    }
+
+    private static boolean isPublishing(MojoExecution execution) {
+        return PUBLISHING.contains(execution.getLifecyclePhase()) || PUBLISHING.contains(execution.getGoal());
+    }
+
+    /**
+     * @param project the project whose jars to wait for, or <code>null</code> for all the jars
+     */
+    private void awaitAll(Project project) throws MojoException {
+        List<Packaging> packagings = new ArrayList<>();
+        synchronized (pending) {
+            pending.values().removeIf(packaging -> {
+                if (project == null || project.getId().equals(packaging.project().getId())) {
+                    packagings.add(packaging);
+                    return true;
+                }
+                return false;
+            });
+        }
+        MojoException failure = null;
+        for (Packaging packaging : packagings) {
+            try {
+                await(packaging);
+            } catch (MojoException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void await(Packaging packaging) throws MojoException {
+        try {
+            packaging.future().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoException("Interrupted while writing " + packaging.jarFile(), e);
+        } catch (ExecutionException e) {
+            try {
+                Files.deleteIfExists(packaging.jarFile());
+            } catch (IOException ignored) {
+                // already failing
+            }
+            packaging.log().error("Error writing " + packaging.jarFile() + " in the background", e.getCause());
+            if (e.getCause() instanceof MojoException) {
+                throw (MojoException) e.getCause();
+            }
+            throw new MojoException("Error writing " + packaging.jarFile() + ": " + e.getCause(), e.getCause());
+        }
+    }
+}
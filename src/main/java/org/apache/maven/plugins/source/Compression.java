@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+import org.apache.maven.api.plugin.MojoException;
+import org.codehaus.plexus.util.SelectorUtils;
+
+/**
+ * How the entries of a sources jar are compressed.
+ *
+ * @param level the deflate level, from <code>0</code> (store) to <code>9</code>, or
+ *     {@link Deflater#DEFAULT_COMPRESSION}
+ * @param strategy the deflate strategy, one of the {@link Deflater} strategies
+ * @param storedFiles the patterns of the entries stored without compression
+ * @since 4.0.0
+ */
+record Compression(int level, int strategy, List<String> storedFiles) {
+
+    /**
+     * The compression of the archiver: default level and strategy.
+     */
+    static final Compression DEFAULT =
+            new Compression(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, List.of());
+
+    /**
+     * @param level the deflate level, <code>-1</code> for the default
+     * @param strategy the name of the deflate strategy: <code>default</code>, <code>filtered</code> or
+     *     <code>huffman</code>
+     * @param storedFiles the patterns of the entries stored without compression, may be <code>null</code>
+     * @return the compression
+     * @throws MojoException if the level or the strategy is invalid
+     */
+    static Compression of(int level, String strategy, String[] storedFiles) throws MojoException {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new MojoException("Invalid compression level " + level + ": expected -1 (default) or 0 to 9");
+        }
+        int deflateStrategy =
+                switch (strategy == null ? "default" : strategy.trim().toLowerCase(Locale.ROOT)) {
+                    case "default" -> Deflater.DEFAULT_STRATEGY;
+                    case "filtered" -> Deflater.FILTERED;
+                    case "huffman" -> Deflater.HUFFMAN_ONLY;
+                    default -> throw new MojoException("Invalid compression strategy '" + strategy
+                            + "': expected default, filtered or huffman");
+                };
+        return new Compression(level, deflateStrategy, storedFiles == null ? List.of() : List.of(storedFiles));
+    }
+
+    /**
+     * @return whether all the entries are stored without compression
+     */
+    boolean isStoreAll() {
+        return level == Deflater.NO_COMPRESSION;
+    }
+
+    /**
+     * The archiver always deflates with the default level and strategy: other settings require to recompress the
+     * entries it stored.
+     *
+     * @return whether the archiver output must be recompressed
+     */
+    boolean isRecompressed() {
+        return !isStoreAll()
+                && ((level != Deflater.DEFAULT_COMPRESSION && level != 6) || strategy != Deflater.DEFAULT_STRATEGY);
+    }
+
+    /**
+     * @param name an entry name
+     * @return whether the entry is stored without compression
+     */
+    boolean isStored(String name) {
+        if (isStoreAll()) {
+            return true;
+        }
+        for (String pattern : storedFiles) {
+            if (SelectorUtils.matchPath(pattern, name, "/", true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a new deflater with this level and strategy, writing raw deflate data
+     */
+    Deflater newDeflater() {
+        Deflater deflater = new Deflater(level, true);
+        deflater.setStrategy(strategy);
+        return deflater;
+    }
+}
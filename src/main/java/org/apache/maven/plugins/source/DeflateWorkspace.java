@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * The deflater, checksums and buffers of the entries deflated by a thread, reused from one entry to the next: a jar of
+ * many small files otherwise allocates a deflater, with its native memory, and its buffers for each of them.
+ * <p>
+ * A thread deflates one entry at a time, so it holds one workspace. If it starts another entry before releasing its
+ * workspace, the entry gets a workspace of its own, which is not reused.
+ *
+ * @since 4.0.0
+ */
+final class DeflateWorkspace {
+    static final int BUFFER_SIZE = 8192;
+
+    private static final ThreadLocal<DeflateWorkspace> CURRENT =
+            ThreadLocal.withInitial(() -> new DeflateWorkspace(true));
+
+    private final boolean pooled;
+
+    private final CRC32 crc = new CRC32();
+
+    private final MessageDigest sha256;
+
+    private final byte[] input = new byte[BUFFER_SIZE];
+
+    private final byte[] output = new byte[BUFFER_SIZE];
+
+    private Deflater deflater;
+
+    private int level;
+
+    private int strategy;
+
+    private boolean inUse;
+
+    private DeflateWorkspace(boolean pooled) {
+        this.pooled = pooled;
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param compression the compression of the entry
+     * @return the workspace of the current thread, with a deflater of the compression, to release once the entry is
+     *     deflated
+     */
+    static DeflateWorkspace acquire(Compression compression) {
+        DeflateWorkspace workspace = CURRENT.get();
+        if (workspace.inUse) {
+            workspace = new DeflateWorkspace(false);
+        }
+        workspace.inUse = true;
+        if (workspace.deflater == null
+                || workspace.level != compression.level()
+                || workspace.strategy != compression.strategy()) {
+            if (workspace.deflater != null) {
+                workspace.deflater.end();
+            }
+            workspace.deflater = compression.newDeflater();
+            workspace.level = compression.level();
+            workspace.strategy = compression.strategy();
+        }
+        return workspace;
+    }
+
+    /**
+     * @return the raw deflater, reset
+     */
+    Deflater deflater() {
+        return deflater;
+    }
+
+    /**
+     * @return the checksum of the uncompressed data, reset
+     */
+    CRC32 crc() {
+        return crc;
+    }
+
+    /**
+     * @return the SHA-256 digest of the uncompressed data, reset
+     */
+    MessageDigest sha256() {
+        return sha256;
+    }
+
+    /**
+     * @return a buffer of {@value #BUFFER_SIZE} bytes for the uncompressed data
+     */
+    byte[] input() {
+        return input;
+    }
+
+    /**
+     * @return a buffer of {@value #BUFFER_SIZE} bytes for the deflated data
+     */
+    byte[] output() {
+        return output;
+    }
+
+    /**
+     * Resets the workspace for the next entry of the thread.
+     */
+    void release() {
+        if (pooled) {
+            deflater.reset();
+            crc.reset();
+            sha256.reset();
+            inUse = false;
+        } else {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.apache.maven.api.plugin.Log;
+import org.apache.maven.api.plugin.MojoException;
+
+/**
+ * The files of an archive packaged under the same name, typically the same resource in several modules of an
+ * aggregate jar. The archiver keeps the first one in all cases; the names are indexed in an {@link EntryNameIndex}, so
+ * that checking a jar of many modules for duplicates does not hold a string set of all its entries. The same file
+ * added again under its name, as by a directory that is both a source and a resource root, is not a duplicate.
+ *
+ * @since 4.0.0
+ */
+final class DuplicateEntries {
+
+    /**
+     * What to do with the duplicate entries.
+     */
+    enum Policy {
+        /**
+         * Keep the first entry of a name, without checking the others up front.
+         */
+        FIRST,
+        /**
+         * Fail the build before the jar is written.
+         */
+        FAIL,
+        /**
+         * Keep the first entry of a name, logging a warning for the others.
+         */
+        REPORT;
+
+        static Policy of(String value) throws MojoException {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new MojoException(
+                        "Invalid duplicate entries policy '" + value + "': expected one of first, fail or report", e);
+            }
+        }
+    }
+
+    private final Policy policy;
+
+    private final EntryNameIndex names = new EntryNameIndex();
+
+    /**
+     * The number of entries of each name beyond the first, by number of the name.
+     */
+    private int[] copies = new int[64];
+
+    /**
+     * The file of the first entry of each name, by number of the name.
+     */
+    private File[] files = new File[64];
+
+    private int duplicates;
+
+    /**
+     * @param policy what to do with the duplicate entries
+     */
+    DuplicateEntries(Policy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * @return whether the entries are to be checked before the jar is written
+     */
+    boolean isChecked() {
+        return policy != Policy.FIRST;
+    }
+
+    /**
+     * Adds a file entry, in archiver order.
+     *
+     * @param name the name of the entry
+     * @param file the file of the entry, <code>null</code> if not a file
+     */
+    void add(String name, File file) {
+        int id = names.add(name.replace('\\', '/'));
+        if (id >= 0) {
+            if (id == copies.length) {
+                copies = Arrays.copyOf(copies, id * 2);
+                files = Arrays.copyOf(files, id * 2);
+            }
+            files[id] = file;
+        } else if (!isSameFile(files[-1 - id], file)) {
+            copies[-1 - id]++;
+            duplicates++;
+        }
+    }
+
+    /**
+     * @param first the file of the first entry of a name
+     * @param file the file of another entry of that name
+     * @return whether both are the same file, added twice
+     */
+    static boolean isSameFile(File first, File file) {
+        return first != null
+                && file != null
+                && (first.equals(file) || normalize(first).equals(normalize(file)));
+    }
+
+    private static Path normalize(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * @return the number of entries skipped as duplicates
+     */
+    int getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Reports the duplicate entries, once all the entries have been added.
+     *
+     * @param log the log
+     * @throws MojoException if some entries are duplicates and the policy is {@link Policy#FAIL}
+     */
+    void report(Log log) throws MojoException {
+        if (log.isDebugEnabled()) {
+            log.debug("Indexed " + names.size() + " entry names in " + PackagingPlan.formatSize(names.memoryUsage()));
+        }
+        if (duplicates == 0) {
+            return;
+        }
+        log.warn(duplicates + " duplicate entries " + (policy == Policy.FAIL ? "refused" : "skipped")
+                + ", the first file of each name is kept:");
+        for (int id : names.sorted()) {
+            if (copies[id] > 0) {
+                log.warn("  " + names.name(id) + " (" + copies[id] + (copies[id] == 1 ? " copy)" : " copies)"));
+            }
+        }
+        if (policy == Policy.FAIL) {
+            throw new MojoException(duplicates + " duplicate entries in the source archive: exclude them or set "
+                    + "duplicateEntries to first or report");
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The distinct entry names of a jar, kept compact for the aggregate jars of hundreds of thousands of entries: the
+ * names are encoded in UTF-8 one after the other in a single array, and found back through an open addressing table
+ * of their numbers. A name takes its encoded length plus about 20 bytes, where a {@link java.util.HashSet} of strings
+ * takes about 80 bytes more.
+ * <p>
+ * Each name gets a number, in order of addition, so that the callers can keep what they know about a name in arrays
+ * or lists indexed by it. The names can be listed in the order of their UTF-8 bytes, which is the order of their code
+ * points. Not thread safe.
+ *
+ * @since 4.0.0
+ */
+final class EntryNameIndex {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY * 32];
+
+    /**
+     * The start of each name in {@link #bytes}, followed by the end of the last name.
+     */
+    private int[] offsets = new int[INITIAL_CAPACITY + 1];
+
+    private int[] hashes = new int[INITIAL_CAPACITY];
+
+    /**
+     * The number of the name plus one in each slot, <code>0</code> for an empty slot. At most half full.
+     */
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    private int size;
+
+    /**
+     * Adds a name, if not already there.
+     *
+     * @param name the name
+     * @return the number of the name if added, or <code>-1 - number</code> of the same name added before
+     */
+    int add(String name) {
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(encoded);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        for (int id = table[slot] - 1; id >= 0; id = table[slot] - 1) {
+            if (hashes[id] == hash && equals(id, encoded)) {
+                return -1 - id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int id = size;
+        if (id == hashes.length) {
+            hashes = Arrays.copyOf(hashes, id * 2);
+            offsets = Arrays.copyOf(offsets, id * 2 + 1);
+        }
+        int start = offsets[id];
+        if (start + encoded.length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, start + encoded.length));
+        }
+        System.arraycopy(encoded, 0, bytes, start, encoded.length);
+        offsets[id + 1] = start + encoded.length;
+        hashes[id] = hash;
+        table[slot] = id + 1;
+        size++;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * @param name a name
+     * @return whether the name was added
+     */
+    boolean contains(String name) {
+        return find(name) >= 0;
+    }
+
+    /**
+     * @param name a name
+     * @return the number of the name, or <code>-1</code> if it was not added
+     */
+    int find(String name) {
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(encoded);
+        int mask = table.length - 1;
+        for (int slot = hash & mask, id = table[slot] - 1; id >= 0; slot = (slot + 1) & mask, id = table[slot] - 1) {
+            if (hashes[id] == hash && equals(id, encoded)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param id the number of a name
+     * @return the name
+     */
+    String name(int id) {
+        return new String(bytes, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of names
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the numbers of the names, in the order of their UTF-8 bytes
+     */
+    int[] sorted() {
+        int[] ids = new int[size];
+        Arrays.setAll(ids, id -> id);
+        mergeSort(ids, new int[size], 0, size);
+        return ids;
+    }
+
+    /**
+     * @return the size in bytes of the arrays of the index
+     */
+    long memoryUsage() {
+        return bytes.length + 4L * (offsets.length + hashes.length + table.length);
+    }
+
+    private boolean equals(int id, byte[] encoded) {
+        return Arrays.equals(bytes, offsets[id], offsets[id + 1], encoded, 0, encoded.length);
+    }
+
+    private int compare(int id, int other) {
+        return Arrays.compareUnsigned(bytes, offsets[id], offsets[id + 1], bytes, offsets[other], offsets[other + 1]);
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    private void mergeSort(int[] ids, int[] work, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(ids, work, from, middle);
+        mergeSort(ids, work, middle, to);
+        if (compare(ids[middle - 1], ids[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(ids, from, work, from, to - from);
+        for (int i = from, left = from, right = middle; i < to; i++) {
+            if (right == to || (left < middle && compare(work[left], work[right]) <= 0)) {
+                ids[i] = work[left++];
+            } else {
+                ids[i] = work[right++];
+            }
+        }
+    }
+
+    private static int hash(byte[] encoded) {
+        int hash = Arrays.hashCode(encoded);
+        // spreads the bits used by the table, as the names of a jar share long prefixes
+        return hash ^ (hash >>> 16);
+    }
+}
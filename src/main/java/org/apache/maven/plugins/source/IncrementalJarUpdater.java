@@ -0,0 +1,514 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.UnixStat;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.maven.api.plugin.Log;
+
+/**
+ * Updates an existing sources jar in place of a full rewrite: the entries whose file did not change are copied with
+ * their compressed data as is, only the added and modified files are compressed again.
+ * <p>
+ * The size and last modification time of each packaged file are stored next to the jar, in a
+ * <code>.state</code> file. A file whose size and time did not change is unchanged; a file only touched is detected
+ * by comparing its CRC-32 with the one of its entry. The state also records a fingerprint of the configuration
+ * producing the other entries (manifest, maven descriptor): when it changes, the jar is fully rewritten.
+ * <p>
+ * Each file is read at most once: a single pass computes its CRC-32, size and SHA-256 with the data of its entry,
+ * which is kept until written. The SHA-256 of the files is recorded in the state too, so that the fingerprint of the
+ * inputs of the next build only reads the files which changed.
+ * <p>
+ * When the build is reproducible (<code>outputTimestamp</code> is set), an update only rewrites modified entries,
+ * keeping their position and timestamp, so that the result matches a full rewrite. Adding or removing files then
+ * requires a full rewrite, as the position of the entries would differ.
+ * <p>
+ * As the writers of the jar, the update sorts the entries in {@link LocalityOrder} and writes the
+ * {@link SourceIndexWriter source index} in its single pass, if so configured.
+ *
+ * @since 4.0.0
+ */
+final class IncrementalJarUpdater implements Closeable {
+    private static final String STATE_HEADER = "# maven-source-plugin incremental state 2";
+
+    private static final String UNKNOWN_HASH = "-";
+
+    private static final int DEFAULT_FILE_MODE = UnixStat.FILE_FLAG | 0644;
+
+    private static final int DEFAULT_DIR_MODE = UnixStat.DIR_FLAG | 0755;
+
+    /**
+     * A file to package, with the attributes read when the directories were scanned.
+     *
+     * @param name the entry name
+     * @param file the file
+     * @param size the size of the file
+     * @param lastModified the last modification time of the file, in milliseconds
+     */
+    record Input(String name, File file, long size, long lastModified) {
+
+        /**
+         * @param name the entry name
+         * @param file the file, whose attributes are read
+         */
+        Input(String name, File file) {
+            this(name, file, file.length(), file.lastModified());
+        }
+    }
+
+    /**
+     * An entry of the updated jar.
+     *
+     * @param name the name of the entry
+     * @param previous the entry of the previous jar, or <code>null</code> if added
+     * @param input the file to compress for the entry, or <code>null</code> to copy the previous entry
+     */
+    private record Update(String name, ZipArchiveEntry previous, Input input) {
+
+        /**
+         * @return the time of the entry in the previous jar, or of the file or the update when added
+         */
+        long time() {
+            if (previous != null) {
+                return previous.getTime();
+            }
+            return input != null ? input.lastModified() : System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @param sha256 the SHA-256 of the content, or <code>null</code> if unknown
+     */
+    private record Recorded(long size, long lastModified, String sha256) {
+        boolean matches(Input input) {
+            return size == input.size() && lastModified == input.lastModified();
+        }
+    }
+
+    private final Path jarFile;
+
+    private final Path stateFile;
+
+    private final String fingerprint;
+
+    private final boolean reproducible;
+
+    private final Log log;
+
+    private boolean updated;
+
+    private Compression compression = Compression.DEFAULT;
+
+    private final ScatterBuffers buffers;
+
+    private long mappedThreshold;
+
+    private boolean localityOrder;
+
+    private boolean sourceIndex;
+
+    private FileTime lastModifiedTime;
+
+    private Map<String, Recorded> state;
+
+    private boolean stateRead;
+
+    private final Map<String, JarRecompressor.Deflated> reads = new HashMap<>();
+
+    private final Map<String, String> hashes = new HashMap<>();
+
+    private int fileReads;
+
+    /**
+     * @param jarFile the sources jar
+     * @param fingerprint the fingerprint of the configuration of the non file entries
+     * @param reproducible whether entry timestamps are normalized for reproducible builds
+     * @param buffers the buffers of the data read for the rewritten entries
+     * @param log the log
+     */
+    IncrementalJarUpdater(Path jarFile, String fingerprint, boolean reproducible, ScatterBuffers buffers, Log log) {
+        this.jarFile = jarFile;
+        this.stateFile = jarFile.resolveSibling(jarFile.getFileName() + ".state");
+        this.fingerprint = fingerprint;
+        this.reproducible = reproducible;
+        this.buffers = buffers;
+        this.log = log;
+    }
+
+    /**
+     * Updates the jar.
+     *
+     * @param inputs the files to package, in archiver order
+     * @return <code>false</code> if the jar could not be updated and must be fully written
+     * @throws IOException in case of an error
+     */
+    boolean update(List<Input> inputs) throws IOException {
+        updated = false;
+        Map<String, Recorded> state = getState();
+        if (state == null || !Files.isRegularFile(jarFile)) {
+            log.debug("No previous state for " + jarFile.getFileName() + ": full rewrite");
+            return false;
+        }
+
+        Path tmpFile = Files.createTempFile(jarFile.getParent(), jarFile.getFileName().toString(), ".tmp");
+        int copied = 0;
+        int compressed = 0;
+        int removed = 0;
+        try (ZipFile previous = ZipFile.builder().setPath(jarFile).get()) {
+            List<ZipArchiveEntry> entries = Collections.list(previous.getEntriesInPhysicalOrder());
+            Set<String> existing = new HashSet<>();
+            entries.forEach(entry -> existing.add(entry.getName()));
+
+            Map<String, Input> planned = new LinkedHashMap<>();
+            List<Input> added = new ArrayList<>();
+            for (Input input : inputs) {
+                planned.put(input.name(), input);
+                if (!existing.contains(input.name())) {
+                    added.add(input);
+                }
+            }
+            Set<String> modified = new HashSet<>();
+            for (ZipArchiveEntry entry : entries) {
+                String name = entry.getName();
+                if (state.containsKey(name) && !planned.containsKey(name)) {
+                    removed++;
+                } else if (planned.containsKey(name) && !isUnchanged(planned.get(name), state.get(name), entry)) {
+                    modified.add(name);
+                }
+            }
+
+            if (reproducible && (!added.isEmpty() || removed > 0)) {
+                log.debug("Files added or removed in a reproducible build: full rewrite");
+                Files.delete(tmpFile);
+                return false;
+            }
+            if (added.isEmpty() && removed == 0 && modified.isEmpty()) {
+                log.info("Sources jar " + jarFile.getFileName() + " is up to date (" + fileReads + " files read)");
+                Files.delete(tmpFile);
+                return true;
+            }
+
+            Set<String> directories = new HashSet<>();
+            List<Update> updates = new ArrayList<>();
+            for (ZipArchiveEntry entry : entries) {
+                String name = entry.getName();
+                if ((state.containsKey(name) && !planned.containsKey(name))
+                        || SourceIndexWriter.INDEX_NAME.equals(name)) {
+                    continue;
+                }
+                if (entry.isDirectory()) {
+                    directories.add(name);
+                }
+                updates.add(new Update(name, entry, modified.contains(name) ? planned.get(name) : null));
+            }
+            for (Input input : added) {
+                addParentDirectories(updates, input.name(), directories);
+                updates.add(new Update(input.name(), null, input));
+            }
+            if (localityOrder) {
+                updates.sort(Comparator.comparing(Update::name, LocalityOrder.COMPARATOR));
+            }
+
+            try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(tmpFile)) {
+                out.setEncoding(StandardCharsets.UTF_8.name());
+                SourceIndexWriter index = sourceIndex ? new SourceIndexWriter() : null;
+                for (Update update : updates) {
+                    if (index != null) {
+                        // the local header of the entry starts where the jar is
+                        index.add(update.name(), update.time(), out.getBytesWritten());
+                    }
+                    if (update.input() != null) {
+                        write(out, update.input(), update.previous());
+                        compressed++;
+                    } else if (update.previous() != null) {
+                        try (InputStream raw = previous.getRawInputStream(update.previous())) {
+                            out.addRawArchiveEntry(update.previous(), raw);
+                        }
+                        copied++;
+                    } else {
+                        addDirectory(out, update.name());
+                    }
+                }
+                if (index != null) {
+                    index.write(out, lastModifiedTime);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmpFile);
+            throw e;
+        }
+        Files.move(tmpFile, jarFile, StandardCopyOption.REPLACE_EXISTING);
+        updated = true;
+
+        log.info("Updated " + jarFile.getFileName() + ": " + compressed + " entries compressed, " + copied
+                + " copied, " + removed + " removed (" + fileReads + " files read)");
+        return true;
+    }
+
+    /**
+     * Computes the SHA-256 of the content of a file: the recorded one if the file did not change, otherwise read with
+     * the data of its entry, which the update writes without reading the file again.
+     *
+     * @param input a file to package
+     * @return the SHA-256 of its content, in hexadecimal
+     * @throws IOException in case of an error
+     */
+    String contentHash(Input input) throws IOException {
+        String hash = hashes.get(input.name());
+        if (hash == null) {
+            Map<String, Recorded> recorded = getState();
+            Recorded previous = recorded != null ? recorded.get(input.name()) : null;
+            if (previous != null && previous.sha256() != null && previous.matches(input)) {
+                hash = previous.sha256();
+                hashes.put(input.name(), hash);
+            } else {
+                hash = read(input).sha256();
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return the number of files read since the updater was created
+     */
+    int getFileReads() {
+        return fileReads;
+    }
+
+    /**
+     * Releases the data of the files read but not written.
+     *
+     * @throws IOException in case of an error
+     */
+    @Override
+    public void close() throws IOException {
+        for (JarRecompressor.Deflated read : reads.values()) {
+            read.data().close();
+        }
+        reads.clear();
+    }
+
+    /**
+     * @param localityOrder whether the entries are sorted in locality order
+     */
+    void setLocalityOrder(boolean localityOrder) {
+        this.localityOrder = localityOrder;
+    }
+
+    /**
+     * @param sourceIndex whether the source index is written
+     * @param lastModifiedTime the time of the entries of a reproducible build, or <code>null</code>
+     */
+    void setSourceIndex(boolean sourceIndex, FileTime lastModifiedTime) {
+        this.sourceIndex = sourceIndex;
+        this.lastModifiedTime = lastModifiedTime;
+    }
+
+    /**
+     * @param compression the compression of the rewritten entries
+     */
+    void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * @param mappedThreshold the size from which the files are read through memory mapping, <code>0</code> to never
+     *     map them
+     */
+    void setMappedThreshold(long mappedThreshold) {
+        this.mappedThreshold = mappedThreshold;
+    }
+
+    /**
+     * @return whether the last successful {@link #update(List)} rewrote the jar, <code>false</code> if up to date
+     */
+    boolean isUpdated() {
+        return updated;
+    }
+
+    /**
+     * Records the state of the files packaged in the jar, for the next update.
+     *
+     * @param inputs the packaged files
+     * @throws IOException in case of an error
+     */
+    void recordState(List<Input> inputs) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(stateFile, StandardCharsets.UTF_8)) {
+            writer.write(STATE_HEADER);
+            writer.newLine();
+            writer.write(fingerprint);
+            writer.newLine();
+            Map<String, Recorded> recorded = getState();
+            for (Input input : inputs) {
+                String hash = hashes.get(input.name());
+                Recorded previous = recorded != null ? recorded.get(input.name()) : null;
+                if (hash == null && previous != null && previous.sha256() != null && previous.matches(input)) {
+                    hash = previous.sha256();
+                }
+                writer.write(input.size() + " " + input.lastModified() + " " + (hash != null ? hash : UNKNOWN_HASH)
+                        + " " + input.name());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Forgets the recorded state, if any.
+     *
+     * @throws IOException in case of an error
+     */
+    void deleteState() throws IOException {
+        Files.deleteIfExists(stateFile);
+    }
+
+    private Map<String, Recorded> getState() throws IOException {
+        if (!stateRead) {
+            state = readState();
+            stateRead = true;
+        }
+        return state;
+    }
+
+    private Map<String, Recorded> readState() throws IOException {
+        if (!Files.isRegularFile(stateFile)) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(stateFile, StandardCharsets.UTF_8);
+        if (lines.size() < 2 || !STATE_HEADER.equals(lines.get(0)) || !fingerprint.equals(lines.get(1))) {
+            log.debug("Configuration changed since " + jarFile.getFileName() + " was written");
+            return null;
+        }
+        Map<String, Recorded> state = new HashMap<>();
+        for (String line : lines.subList(2, lines.size())) {
+            String[] fields = line.split(" ", 4);
+            if (fields.length != 4) {
+                return null;
+            }
+            state.put(
+                    fields[3],
+                    new Recorded(
+                            Long.parseLong(fields[0]),
+                            Long.parseLong(fields[1]),
+                            UNKNOWN_HASH.equals(fields[2]) ? null : fields[2]));
+        }
+        return state;
+    }
+
+    private boolean isUnchanged(Input input, Recorded recorded, ZipArchiveEntry entry) throws IOException {
+        if (recorded != null && recorded.matches(input)) {
+            return true;
+        }
+        if (entry.getSize() != input.size() || entry.getCrc() == -1) {
+            return false;
+        }
+        // only touched? compare the checksum, keeping the data read in case the file changed
+        if (read(input).crc() == entry.getCrc()) {
+            reads.remove(input.name()).data().close();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads a file once, for its checksum, its hash and the data of its entry.
+     */
+    private JarRecompressor.Deflated read(Input input) throws IOException {
+        JarRecompressor.Deflated read = reads.get(input.name());
+        if (read == null) {
+            read = JarRecompressor.read(
+                    input.file().toPath(),
+                    input.size(),
+                    !compression.isStored(input.name()),
+                    compression,
+                    buffers,
+                    mappedThreshold);
+            fileReads++;
+            reads.put(input.name(), read);
+            hashes.put(input.name(), read.sha256());
+        }
+        return read;
+    }
+
+    private void write(ZipArchiveOutputStream out, Input input, ZipArchiveEntry previous) throws IOException {
+        ZipArchiveEntry entry = new ZipArchiveEntry(input.name());
+        entry.setMethod(compression.isStored(input.name()) ? ZipEntry.STORED : ZipEntry.DEFLATED);
+        if (previous != null) {
+            entry.setUnixMode(previous.getUnixMode());
+            entry.setTime(reproducible ? previous.getTime() : input.lastModified());
+        } else {
+            entry.setUnixMode(DEFAULT_FILE_MODE);
+            entry.setTime(input.lastModified());
+        }
+        JarRecompressor.Deflated read = read(input);
+        reads.remove(input.name());
+        try (InputStream data = read.data().getInputStream()) {
+            entry.setSize(read.size());
+            entry.setCompressedSize(read.compressedSize());
+            entry.setCrc(read.crc());
+            out.addRawArchiveEntry(entry, data);
+        } finally {
+            read.data().close();
+        }
+    }
+
+    private static void addParentDirectories(List<Update> updates, String name, Set<String> directories) {
+        int index = name.lastIndexOf('/');
+        if (index <= 0) {
+            return;
+        }
+        String directory = name.substring(0, index + 1);
+        if (directories.contains(directory)) {
+            return;
+        }
+        addParentDirectories(updates, directory.substring(0, index), directories);
+        updates.add(new Update(directory, null, null));
+        directories.add(directory);
+    }
+
+    private static void addDirectory(ZipArchiveOutputStream out, String name) throws IOException {
+        ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setUnixMode(DEFAULT_DIR_MODE);
+        entry.setTime(System.currentTimeMillis());
+        out.putArchiveEntry(entry);
+        out.closeArchiveEntry();
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import org.apache.maven.api.Event;
+import org.apache.maven.api.EventType;
+import org.apache.maven.api.Listener;
+import org.apache.maven.api.MojoExecution;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.SessionData;
+import org.apache.maven.api.plugin.Log;
+
+/**
+ * The sources jar installed in the local repository, reused when it was built from the same inputs: the build is then
+ * avoided.
+ * <p>
+ * The fingerprint of the inputs is recorded next to the installed jar, in a <code>.inputs</code> file, once an install
+ * of the build copied the built jar to the local repository: a jar built but not installed never touches the local
+ * repository. The file also records the size, time and SHA-256 of the installed jar, so that a jar installed by
+ * another build is never mistaken for the one matching the fingerprint. The installed jar is only read again when
+ * its size or time changed.
+ *
+ * @since 4.0.0
+ */
+final class InstalledSources {
+    private static final String HEADER = "# maven-source-plugin installed inputs 3";
+
+    private static final SessionData.Key<Installs> KEY = SessionData.key(Installs.class);
+
+    /**
+     * Computes the SHA-256 of the content of a file to package.
+     */
+    interface ContentHash {
+        /**
+         * @param input a file to package
+         * @return the SHA-256 of its content, in hexadecimal
+         * @throws IOException in case of an error
+         */
+        String of(IncrementalJarUpdater.Input input) throws IOException;
+    }
+
+    private final Path installedFile;
+
+    private final Path inputsFile;
+
+    private final Log log;
+
+    /**
+     * @param installedFile the path of the sources jar in the local repository
+     * @param log the log
+     */
+    InstalledSources(Path installedFile, Log log) {
+        this.installedFile = installedFile;
+        this.inputsFile = installedFile.resolveSibling(installedFile.getFileName() + ".inputs");
+        this.log = log;
+    }
+
+    /**
+     * Computes the fingerprint of the inputs of a jar, reading the content of each file.
+     *
+     * @param configuration the fingerprint of the configuration of the non file entries
+     * @param inputs the files to package, in archiver order
+     * @param reproducible whether entry timestamps are normalized for reproducible builds
+     * @return the fingerprint
+     * @throws IOException in case of an error
+     */
+    static String fingerprint(String configuration, List<IncrementalJarUpdater.Input> inputs, boolean reproducible)
+            throws IOException {
+        return fingerprint(configuration, inputs, reproducible, InstalledSources::contentHash);
+    }
+
+    /**
+     * @param input a file to package
+     * @return the SHA-256 of its content, in hexadecimal
+     * @throws IOException in case of an error
+     */
+    static String contentHash(IncrementalJarUpdater.Input input) throws IOException {
+        return hash(input.file().toPath());
+    }
+
+    /**
+     * Computes the fingerprint of the inputs of a jar, from the content of its files. Without reproducible builds the
+     * entries record the time of their file, which is then part of the fingerprint too.
+     *
+     * @param configuration the fingerprint of the configuration of the non file entries
+     * @param inputs the files to package, in archiver order
+     * @param reproducible whether entry timestamps are normalized for reproducible builds
+     * @param contentHash the hash of the content of the files, as the {@link IncrementalJarUpdater} computes it with
+     *     the data of their entry
+     * @return the fingerprint
+     * @throws IOException in case of an error
+     */
+    static String fingerprint(
+            String configuration,
+            List<IncrementalJarUpdater.Input> inputs,
+            boolean reproducible,
+            ContentHash contentHash)
+            throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(configuration.getBytes(StandardCharsets.UTF_8));
+        for (IncrementalJarUpdater.Input input : inputs) {
+            String header = '\n' + input.name() + '\n' + input.size() + '\n'
+                    + (reproducible ? "" : String.valueOf(input.lastModified())) + '\n' + contentHash.of(input);
+            digest.update(header.getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return the path of the sources jar in the local repository
+     */
+    Path getInstalledFile() {
+        return installedFile;
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the inputs of the jar to build
+     * @return whether the installed jar was built from the same inputs
+     * @throws IOException in case of an error
+     */
+    boolean matches(String fingerprint) throws IOException {
+        if (!Files.isRegularFile(inputsFile) || !Files.isRegularFile(installedFile)) {
+            return false;
+        }
+        List<String> lines = Files.readAllLines(inputsFile, StandardCharsets.UTF_8);
+        if (lines.size() != 5 || !HEADER.equals(lines.get(0)) || !fingerprint.equals(lines.get(1))) {
+            log.debug("Inputs changed since " + installedFile.getFileName() + " was installed");
+            return false;
+        }
+        if (!lines.get(2).equals(String.valueOf(Files.size(installedFile)))) {
+            log.debug("Installed " + installedFile.getFileName() + " was not built from the recorded inputs");
+            return false;
+        }
+        // the same size and time as recorded at install: the jar is not read again
+        if (!lines.get(3).equals(String.valueOf(Files.getLastModifiedTime(installedFile).toMillis()))
+                && !lines.get(4).equals(hash(installedFile))) {
+            log.debug("Installed " + installedFile.getFileName() + " was not built from the recorded inputs");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Copies the installed jar in place of the jar to build. It is not linked, as an install writing the installed
+     * jar in place would then truncate its own source.
+     *
+     * @param jarFile the jar to replace
+     * @throws IOException in case of an error
+     */
+    void copyTo(Path jarFile) throws IOException {
+        Files.createDirectories(jarFile.getParent());
+        Files.copy(installedFile, jarFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+    }
+
+    /**
+     * Records the inputs of a built jar once an install of the session copied it to the local repository.
+     *
+     * @param session the session
+     * @param fingerprint the fingerprint of the inputs of the jar
+     * @param jarFile the built jar
+     */
+    void recordWhenInstalled(Session session, String fingerprint, Path jarFile) {
+        Installs installs = session.getData().computeIfAbsent(KEY, () -> {
+            Installs listener = new Installs();
+            session.registerListener(listener);
+            return listener;
+        });
+        installs.add(new Built(this, fingerprint, jarFile));
+    }
+
+    /**
+     * Records the inputs of a built jar if it is the installed jar.
+     *
+     * @param fingerprint the fingerprint of the inputs of the jar
+     * @param jarFile the built jar
+     * @return whether the installed jar is the built jar
+     * @throws IOException in case of an error
+     */
+    boolean recordIfInstalled(String fingerprint, Path jarFile) throws IOException {
+        if (!Files.isRegularFile(installedFile)
+                || !Files.isRegularFile(jarFile)
+                || Files.mismatch(jarFile, installedFile) != -1) {
+            return false;
+        }
+        Files.write(
+                inputsFile,
+                List.of(
+                        HEADER,
+                        fingerprint,
+                        String.valueOf(Files.size(installedFile)),
+                        String.valueOf(Files.getLastModifiedTime(installedFile).toMillis()),
+                        hash(installedFile)),
+                StandardCharsets.UTF_8);
+        return true;
+    }
+
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A jar built in the session, whose inputs to record once it is installed.
+     *
+     * @param installed the jar in the local repository
+     * @param fingerprint the fingerprint of the inputs of the built jar
+     * @param jarFile the built jar
+     */
+    private record Built(InstalledSources installed, String fingerprint, Path jarFile) {}
+
+    /**
+     * The jars built in a session and not installed yet. They are checked after each install, as an install at the
+     * end of the build copies the artifacts of all the modules at once.
+     */
+    private static final class Installs implements Listener {
+        private final List<Built> pending = new ArrayList<>();
+
+        void add(Built built) {
+            synchronized (pending) {
+                pending.removeIf(other -> other.jarFile().equals(built.jarFile()));
+                pending.add(built);
+            }
+        }
+
+        @Override
+        public void onEvent(Event event) {
+            EventType type = event.getType();
+            if (type == EventType.MOJO_SUCCEEDED
+                    && event.getMojoExecution().map(Installs::isInstall).orElse(false)) {
+                synchronized (pending) {
+                    pending.removeIf(Installs::recordIfInstalled);
+                }
+            } else if (type == EventType.SESSION_ENDED) {
+                synchronized (pending) {
+                    pending.clear();
+                }
+            }
+        }
+
+        private static boolean isInstall(MojoExecution execution) {
+            return "install".equals(execution.getGoal()) || "install".equals(execution.getLifecyclePhase());
+        }
+
+        private static boolean recordIfInstalled(Built built) {
+            try {
+                return built.installed().recordIfInstalled(built.fingerprint(), built.jarFile());
+            } catch (IOException e) {
+                built.installed().log.warn("Could not record the inputs of " + built.installed().getInstalledFile()
+                        + ": " + e.getMessage());
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,588 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+
+/**
+ * Compresses the stored entries of a jar with a given deflate level and strategy, which the archiver does not
+ * support: the archiver writes the entries stored, then they are deflated in parallel and written in the same order.
+ * The entries that do not get smaller stay stored.
+ * <p>
+ * The deflated data waits in {@link ScatterBuffers} until its turn to be written. The entries are deflated by the
+ * {@link WorkerBudget} of the build, shared with the other executions of the plugin.
+ * <p>
+ * The entries from the block deflate threshold are deflated in blocks of 1 MiB, each by its own worker, as pigz does:
+ * each block is primed with the last 32 KiB of the previous one, and all but the last end with a sync flush, so that
+ * the blocks make one standard deflate stream.
+ *
+ * @since 4.0.0
+ */
+final class JarRecompressor {
+
+    /**
+     * Deflated data of an entry, to close once written.
+     *
+     * @param data the deflated data
+     * @param compressedSize the size of the deflated data
+     * @param crc the CRC-32 of the uncompressed data
+     * @param size the uncompressed size
+     * @param sha256 the SHA-256 of the uncompressed data, in hexadecimal, or <code>null</code> if not computed
+     */
+    record Deflated(ScatterGatherBackingStore data, long compressedSize, long crc, long size, String sha256) {}
+
+    /**
+     * An entry waiting to be written, with its deflated blocks if any.
+     */
+    private record Pending(ZipArchiveEntry entry, List<Future<Deflated>> blocks) {}
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private final Compression compression;
+
+    private final ScatterBuffers buffers;
+
+    private final long mappedThreshold;
+
+    private final WorkerBudget workers;
+
+    private long blockThreshold;
+
+    /**
+     * @param compression the compression
+     * @param buffers the buffers of the deflated data
+     * @param mappedThreshold the size from which the stored entries are read through memory mapping, <code>0</code>
+     *     to never map them
+     * @param workers the threads deflating the entries
+     */
+    JarRecompressor(Compression compression, ScatterBuffers buffers, long mappedThreshold, WorkerBudget workers) {
+        this.compression = compression;
+        this.buffers = buffers;
+        this.mappedThreshold = mappedThreshold;
+        this.workers = workers;
+    }
+
+    /**
+     * @param blockThreshold the size from which the entries are deflated in parallel blocks, <code>0</code> to never
+     *     split them
+     */
+    void setBlockThreshold(long blockThreshold) {
+        this.blockThreshold = blockThreshold;
+    }
+
+    /**
+     * Recompresses a jar.
+     *
+     * @param jarFile the jar, written with stored entries
+     * @throws IOException in case of an error
+     */
+    void recompress(Path jarFile) throws IOException {
+        Path tmpFile = Files.createTempFile(jarFile.getParent(), jarFile.getFileName().toString(), ".tmp");
+        // the threads are shared: after a failure, the entries not started yet are skipped rather than interrupted
+        AtomicBoolean aborted = new AtomicBoolean();
+        // bounds the deflated data waiting to be written, while keeping the threads busy
+        Deque<Pending> window = new ArrayDeque<>();
+        try {
+            try (ZipFile zip = ZipFile.builder().setPath(jarFile).get();
+                    ZipArchiveOutputStream out = new ZipArchiveOutputStream(tmpFile)) {
+                out.setEncoding(StandardCharsets.UTF_8.name());
+                int tasks = 0;
+                for (ZipArchiveEntry entry : Collections.list(zip.getEntriesInPhysicalOrder())) {
+                    List<Future<Deflated>> blocks = new ArrayList<>();
+                    if (isDeflated(entry) && isSplit(entry)) {
+                        // the data of a stored entry is the file content
+                        blocks = deflateBlocks(
+                                jarFile,
+                                entry.getDataOffset(),
+                                entry.getSize(),
+                                compression,
+                                buffers,
+                                workers,
+                                aborted);
+                    } else if (isDeflated(entry)) {
+                        blocks.add(workers.submit(() -> {
+                            if (aborted.get()) {
+                                return null;
+                            }
+                            if (isMapped(entry)) {
+                                // the data of a stored entry is the file content
+                                return deflate(jarFile, entry.getDataOffset(), entry.getSize(), compression, buffers);
+                            }
+                            try (InputStream in = zip.getInputStream(entry)) {
+                                return deflate(in, compression, buffers);
+                            }
+                        }));
+                    }
+                    window.add(new Pending(entry, blocks));
+                    tasks += blocks.size();
+                    while (tasks > 2 * workers.getParallelism()) {
+                        tasks -= write(zip, out, window.removeFirst());
+                    }
+                }
+                while (!window.isEmpty()) {
+                    write(zip, out, window.removeFirst());
+                }
+            }
+            Files.move(tmpFile, jarFile, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            aborted.set(true);
+            discard(window);
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /**
+     * Releases the buffers of the entries not written, after a failure, once their deflation is over.
+     */
+    private static void discard(Deque<Pending> window) {
+        for (Pending pending : window) {
+            release(pending.blocks());
+        }
+    }
+
+    /**
+     * Releases the buffers of deflated blocks, once their deflation is over.
+     *
+     * @param blocks the deflated blocks
+     */
+    static void release(List<Future<Deflated>> blocks) {
+        for (Future<Deflated> block : blocks) {
+            try {
+                Deflated deflated = get(block);
+                if (deflated != null) {
+                    deflated.data().close();
+                }
+            } catch (IOException e) {
+                // already failing or done
+            }
+        }
+    }
+
+    private boolean isDeflated(ZipArchiveEntry entry) {
+        return !entry.isDirectory()
+                && entry.getMethod() == ZipEntry.STORED
+                && entry.getSize() > 0
+                && !compression.isStored(entry.getName());
+    }
+
+    private boolean isSplit(ZipArchiveEntry entry) {
+        return isSplit(entry.getSize(), blockThreshold) && entry.getDataOffset() >= 0;
+    }
+
+    /**
+     * @param size the size of the data of an entry
+     * @param blockThreshold the size from which the entries are deflated in parallel blocks, <code>0</code> to never
+     *     split them
+     * @return whether the entry is deflated in parallel blocks
+     */
+    static boolean isSplit(long size, long blockThreshold) {
+        return blockThreshold > 0 && size >= blockThreshold && size > BLOCK_SIZE;
+    }
+
+    private boolean isMapped(ZipArchiveEntry entry) {
+        return MappedRegions.REPLACEABLE_WHILE_MAPPED
+                && MappedRegions.isMapped(mappedThreshold, entry.getSize())
+                && entry.getDataOffset() >= 0;
+    }
+
+    /**
+     * @return the number of deflate tasks of the entry
+     */
+    private static int write(ZipFile zip, ZipArchiveOutputStream out, Pending pending) throws IOException {
+        ZipArchiveEntry entry = pending.entry();
+        List<Deflated> blocks = new ArrayList<>();
+        try {
+            for (Future<Deflated> block : pending.blocks()) {
+                blocks.add(get(block));
+            }
+            long compressedSize = 0;
+            for (Deflated block : blocks) {
+                compressedSize += block.compressedSize();
+            }
+            if (!blocks.isEmpty() && compressedSize < entry.getSize()) {
+                // the checksum of the stored entry, as the blocks only have their own
+                addDeflatedEntry(out, entry, blocks, blocks.size() == 1 ? blocks.get(0).crc() : entry.getCrc());
+            } else {
+                try (InputStream raw = zip.getRawInputStream(entry)) {
+                    out.addRawArchiveEntry(entry, raw);
+                }
+            }
+        } finally {
+            for (Deflated block : blocks) {
+                block.data().close();
+            }
+        }
+        return pending.blocks().size();
+    }
+
+    /**
+     * Writes an entry with its deflated data.
+     *
+     * @param out the jar
+     * @param entry the entry, with its name, time and mode
+     * @param blocks the deflated data of the entry, in one or several blocks making one deflate stream
+     * @param crc the CRC-32 of the uncompressed data
+     * @throws IOException in case of an error
+     */
+    static void addDeflatedEntry(ZipArchiveOutputStream out, ZipArchiveEntry entry, List<Deflated> blocks, long crc)
+            throws IOException {
+        long size = 0;
+        long compressedSize = 0;
+        for (Deflated block : blocks) {
+            size += block.size();
+            compressedSize += block.compressedSize();
+        }
+        ZipArchiveEntry compressed = new ZipArchiveEntry(entry);
+        compressed.setMethod(ZipEntry.DEFLATED);
+        compressed.setSize(size);
+        compressed.setCompressedSize(compressedSize);
+        compressed.setCrc(crc);
+        List<InputStream> data = new ArrayList<>();
+        try {
+            for (Deflated block : blocks) {
+                data.add(block.data().getInputStream());
+            }
+            out.addRawArchiveEntry(compressed, new SequenceInputStream(Collections.enumeration(data)));
+        } finally {
+            for (InputStream in : data) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * @param future a deflation
+     * @return the deflated data
+     * @throws IOException if the deflation failed or was interrupted
+     */
+    static Deflated get(Future<Deflated> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("Compression cancelled");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Deflates data with the level and strategy of a compression.
+     *
+     * @param in the uncompressed data
+     * @param compression the compression
+     * @param buffers the buffers of the deflated data
+     * @return the deflated data
+     * @throws IOException in case of an error
+     */
+    static Deflated deflate(InputStream in, Compression compression, ScatterBuffers buffers) throws IOException {
+        Deflation deflation = new Deflation(compression, buffers);
+        try {
+            byte[] buffer = deflation.workspace.input();
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                deflation.update(ByteBuffer.wrap(buffer, 0, read));
+            }
+            return deflation.finish();
+        } catch (IOException | RuntimeException e) {
+            deflation.discard();
+            throw e;
+        }
+    }
+
+    /**
+     * Deflates a part of a file read through memory mapping, without copying it to the heap.
+     *
+     * @param file the file
+     * @param position the position of the uncompressed data in the file
+     * @param size the size of the uncompressed data
+     * @param compression the compression
+     * @param buffers the buffers of the deflated data
+     * @return the deflated data
+     * @throws IOException in case of an error
+     */
+    static Deflated deflate(Path file, long position, long size, Compression compression, ScatterBuffers buffers)
+            throws IOException {
+        Deflation deflation = new Deflation(compression, buffers);
+        try {
+            MappedRegions.read(file, position, size, deflation::update);
+            return deflation.finish();
+        } catch (IOException | RuntimeException e) {
+            deflation.discard();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a file once for its entry: the checksum, the size and the SHA-256 of the content are computed in the same
+     * pass as the data of the entry, deflated or stored as is.
+     *
+     * @param file the file
+     * @param size the size of the file
+     * @param deflated whether to deflate the data, or store it as is
+     * @param compression the compression
+     * @param buffers the buffers of the data
+     * @param mappedThreshold the size from which the file is read through memory mapping, <code>0</code> to never
+     *     map it
+     * @return the data of the entry, with the SHA-256 of the content
+     * @throws IOException in case of an error
+     */
+    static Deflated read(
+            Path file,
+            long size,
+            boolean deflated,
+            Compression compression,
+            ScatterBuffers buffers,
+            long mappedThreshold)
+            throws IOException {
+        Deflation deflation = new Deflation(compression, buffers, deflated, true);
+        try {
+            if (MappedRegions.isMapped(mappedThreshold, size)) {
+                MappedRegions.read(file, 0, size, deflation::update);
+            } else {
+                try (InputStream in = Files.newInputStream(file)) {
+                    byte[] buffer = deflation.workspace.input();
+                    int read;
+                    while ((read = in.read(buffer)) >= 0) {
+                        deflation.update(ByteBuffer.wrap(buffer, 0, read));
+                    }
+                }
+            }
+            return deflation.finish();
+        } catch (IOException | RuntimeException e) {
+            deflation.discard();
+            throw e;
+        }
+    }
+
+    /**
+     * Deflates a part of a file in parallel blocks, as pigz does.
+     *
+     * @param file the file
+     * @param position the position of the uncompressed data in the file
+     * @param size the size of the uncompressed data
+     * @param compression the compression
+     * @param buffers the buffers of the deflated data
+     * @param workers the threads deflating the blocks
+     * @param aborted whether to skip the blocks not started yet, after a failure
+     * @return the deflated blocks, in order, making one deflate stream, <code>null</code> for the skipped ones
+     */
+    static List<Future<Deflated>> deflateBlocks(
+            Path file,
+            long position,
+            long size,
+            Compression compression,
+            ScatterBuffers buffers,
+            WorkerBudget workers,
+            AtomicBoolean aborted) {
+        List<Future<Deflated>> blocks = new ArrayList<>();
+        for (long start = 0; start < size; start += BLOCK_SIZE) {
+            long blockStart = start;
+            blocks.add(workers.submit(() -> aborted.get()
+                    ? null
+                    : deflateBlock(file, position, size, blockStart, compression, buffers)));
+        }
+        return blocks;
+    }
+
+    /**
+     * Deflates a block of a part of a file, primed with the end of the previous block.
+     *
+     * @param file the file
+     * @param position the position of the uncompressed data in the file
+     * @param size the size of the uncompressed data
+     * @param start the position of the block in the data
+     * @param compression the compression
+     * @param buffers the buffers of the deflated data
+     * @return the deflated block, ending the deflate stream if last
+     * @throws IOException in case of an error
+     */
+    private static Deflated deflateBlock(
+            Path file, long position, long size, long start, Compression compression, ScatterBuffers buffers)
+            throws IOException {
+        long from = Math.max(0, start - DICTIONARY_SIZE);
+        int length = (int) Math.min(BLOCK_SIZE, size - start);
+        ByteBuffer input = ByteBuffer.allocate((int) (start - from) + length);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (input.hasRemaining()) {
+                if (channel.read(input, position + from + input.position()) < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+            }
+        }
+        input.flip();
+
+        Deflation deflation = new Deflation(compression, buffers);
+        try {
+            if (start > from) {
+                deflation.setDictionary(input.slice(0, (int) (start - from)));
+                input.position((int) (start - from));
+            }
+            deflation.update(input);
+            return start + length < size ? deflation.flush() : deflation.finish();
+        } catch (IOException | RuntimeException e) {
+            deflation.discard();
+            throw e;
+        }
+    }
+
+    /**
+     * The deflation of an entry, computing the checksum of the uncompressed data, with the workspace of the thread.
+     * Without deflating, the data is stored as is.
+     */
+    private static final class Deflation {
+        private final DeflateWorkspace workspace;
+
+        private final Deflater deflater;
+
+        private final MessageDigest sha256;
+
+        private final ScatterGatherBackingStore data;
+
+        private final CRC32 crc;
+
+        private final byte[] output;
+
+        private long size;
+
+        private long compressedSize;
+
+        Deflation(Compression compression, ScatterBuffers buffers) {
+            this(compression, buffers, true, false);
+        }
+
+        Deflation(Compression compression, ScatterBuffers buffers, boolean deflated, boolean hashed) {
+            this.workspace = DeflateWorkspace.acquire(compression);
+            this.deflater = deflated ? workspace.deflater() : null;
+            this.sha256 = hashed ? workspace.sha256() : null;
+            this.crc = workspace.crc();
+            this.output = workspace.output();
+            this.data = buffers.newStore();
+        }
+
+        void update(ByteBuffer input) throws IOException {
+            crc.update(input.duplicate());
+            if (sha256 != null) {
+                sha256.update(input.duplicate());
+            }
+            size += input.remaining();
+            if (deflater == null) {
+                while (input.hasRemaining()) {
+                    int count = Math.min(output.length, input.remaining());
+                    input.get(output, 0, count);
+                    data.writeOut(output, 0, count);
+                    compressedSize += count;
+                }
+                return;
+            }
+            // the deflater advances the position of the buffer as it consumes it
+            deflater.setInput(input);
+            while (!deflater.needsInput()) {
+                drain();
+            }
+        }
+
+        void setDictionary(ByteBuffer dictionary) {
+            deflater.setDictionary(dictionary);
+        }
+
+        /**
+         * Ends the data with a sync flush, so that the deflated data of the next block can follow.
+         */
+        Deflated flush() throws IOException {
+            int count;
+            do {
+                count = deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH);
+                data.writeOut(output, 0, count);
+                compressedSize += count;
+            } while (count == output.length);
+            return end();
+        }
+
+        Deflated finish() throws IOException {
+            if (deflater == null) {
+                return end();
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                drain();
+            }
+            return end();
+        }
+
+        void discard() throws IOException {
+            workspace.release();
+            data.close();
+        }
+
+        private Deflated end() throws IOException {
+            Deflated deflated = new Deflated(
+                    data,
+                    compressedSize,
+                    crc.getValue(),
+                    size,
+                    sha256 != null ? HexFormat.of().formatHex(sha256.digest()) : null);
+            workspace.release();
+            data.closeForWriting();
+            return deflated;
+        }
+
+        private void drain() throws IOException {
+            int count = deflater.deflate(output);
+            data.writeOut(output, 0, count);
+            compressedSize += count;
+        }
+    }
+}
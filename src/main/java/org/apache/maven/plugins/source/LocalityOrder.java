@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * Orders the entries of a sources jar so that the entries read together are contiguous: tools reading ranges of the
+ * jar, for instance over HTTP from a repository, then fetch fewer and larger ranges.
+ * <p>
+ * The manifest comes first, as required by {@link java.util.jar.JarInputStream}, followed by
+ * <code>module-info.java</code>. The entries are then grouped by package, packages sorted by name, the packages
+ * with an <code>internal</code> or <code>impl</code> segment after the others: this puts the public API first.
+ * Within a package come the directory, <code>package-info.java</code>, the sources, then the other files. The
+ * remaining <code>META-INF</code> entries, such as the Maven descriptor, come last.
+ * <p>
+ * The order only depends on the entry names, so it is deterministic. The entries are copied with their compressed
+ * data as is.
+ *
+ * @since 4.0.0
+ */
+final class LocalityOrder {
+    private static final String META_INF = "META-INF/";
+
+    private static final Set<String> MANIFEST_ENTRIES = Set.of(META_INF, META_INF + "MANIFEST.MF");
+
+    private static final Set<String> NON_API_SEGMENTS = Set.of("internal", "impl");
+
+    /**
+     * Compares entry names according to the locality order.
+     */
+    static final Comparator<String> COMPARATOR = Comparator.comparingInt(LocalityOrder::tier)
+            .thenComparing(LocalityOrder::getPackage)
+            .thenComparingInt(LocalityOrder::rank)
+            .thenComparing(Comparator.naturalOrder());
+
+    private LocalityOrder() {}
+
+    /**
+     * Sorts the entries of a jar.
+     *
+     * @param jarFile the jar
+     * @throws IOException in case of an error
+     */
+    static void sort(Path jarFile) throws IOException {
+        Path tmpFile = Files.createTempFile(jarFile.getParent(), jarFile.getFileName().toString(), ".tmp");
+        try {
+            try (ZipFile zip = ZipFile.builder().setPath(jarFile).get();
+                    ZipArchiveOutputStream out = new ZipArchiveOutputStream(tmpFile)) {
+                out.setEncoding(StandardCharsets.UTF_8.name());
+                List<ZipArchiveEntry> entries = Collections.list(zip.getEntriesInPhysicalOrder());
+                entries.sort(Comparator.comparing(ZipArchiveEntry::getName, COMPARATOR));
+                for (ZipArchiveEntry entry : entries) {
+                    try (InputStream raw = zip.getRawInputStream(entry)) {
+                        out.addRawArchiveEntry(entry, raw);
+                    }
+                }
+            }
+            Files.move(tmpFile, jarFile, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    private static int tier(String name) {
+        if (MANIFEST_ENTRIES.contains(name)) {
+            return 0;
+        }
+        if (name.equals("module-info.java")) {
+            return 1;
+        }
+        if (name.startsWith(META_INF)) {
+            return 4;
+        }
+        for (String segment : getPackage(name).split("/")) {
+            if (NON_API_SEGMENTS.contains(segment)) {
+                return 3;
+            }
+        }
+        return 2;
+    }
+
+    /**
+     * @param name an entry name
+     * @return the directory of a file, the directory itself for a directory entry
+     */
+    private static String getPackage(String name) {
+        if (name.endsWith("/")) {
+            return name.substring(0, name.length() - 1);
+        }
+        int index = name.lastIndexOf('/');
+        return index < 0 ? "" : name.substring(0, index);
+    }
+
+    private static int rank(String name) {
+        if (name.endsWith("/")) {
+            return 0;
+        }
+        if (name.endsWith("/package-info.java") || name.equals("package-info.java")) {
+            return 1;
+        }
+        if (name.endsWith(".java")) {
+            return 2;
+        }
+        return 3;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads large files through memory mapping, so that their content reaches the deflater and the checksums without
+ * being copied to the heap.
+ * <p>
+ * A mapping is only released once its buffer is garbage collected, and Windows does not allow to replace a file while
+ * a mapping of it exists: there, the files about to be replaced are not mapped.
+ *
+ * @since 4.0.0
+ */
+final class MappedRegions {
+    /**
+     * The default size from which files are mapped.
+     */
+    static final long DEFAULT_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Whether a mapped file can be replaced before its mapping is released.
+     */
+    static final boolean REPLACEABLE_WHILE_MAPPED = !System.getProperty("os.name", "").startsWith("Windows");
+
+    private static final long MAX_REGION_SIZE = 1L << 30;
+
+    /**
+     * Consumes the mapped regions of a file.
+     */
+    interface RegionConsumer {
+        void accept(ByteBuffer region) throws IOException;
+    }
+
+    private MappedRegions() {}
+
+    /**
+     * @param threshold the size from which files are mapped, <code>0</code> to never map
+     * @param size the size of the data to read
+     * @return whether the data should be mapped
+     */
+    static boolean isMapped(long threshold, long size) {
+        return threshold > 0 && size >= threshold;
+    }
+
+    /**
+     * Maps a part of a file, in regions of at most 1 GiB.
+     *
+     * @param file the file
+     * @param position the position of the data in the file
+     * @param size the size of the data
+     * @param consumer the consumer of the regions, in order
+     * @throws IOException in case of an error
+     */
+    static void read(Path file, long position, long size, RegionConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (long offset = 0; offset < size; offset += MAX_REGION_SIZE) {
+                long length = Math.min(MAX_REGION_SIZE, size - offset);
+                consumer.accept(channel.map(FileChannel.MapMode.READ_ONLY, position + offset, length));
+            }
+        }
+    }
+}
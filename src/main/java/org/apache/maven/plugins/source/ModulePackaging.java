@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.api.Project;
+import org.apache.maven.api.SourceRoot;
+import org.apache.maven.api.plugin.MojoException;
+
+/**
+ * The sources jars of the modules of a module source hierarchy, where a project holds several Java modules, each with
+ * its own source roots. The jar of each module is written by the goal as the jar of the project, next to it or in
+ * place of it.
+ *
+ * @since 4.0.0
+ */
+final class ModulePackaging {
+
+    private ModulePackaging() {}
+
+    /**
+     * Which jars to write for a project with a module source hierarchy.
+     */
+    enum Mode {
+        /**
+         * Only the jar of the project.
+         */
+        NONE,
+        /**
+         * The jar of the project and the jar of each module.
+         */
+        ALSO,
+        /**
+         * The jar of each module, in place of the jar of the project for the roots of the modules.
+         */
+        ONLY;
+
+        static Mode of(String value) throws MojoException {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new MojoException("Invalid module jars '" + value + "': expected one of none, also or only", e);
+            }
+        }
+    }
+
+    /**
+     * Groups source roots by module.
+     *
+     * @param roots source roots
+     * @return the roots of each module, in order of their first root, without the roots belonging to no module
+     */
+    static Map<String, List<SourceRoot>> byModule(List<SourceRoot> roots) {
+        Map<String, List<SourceRoot>> byModule = new LinkedHashMap<>();
+        for (SourceRoot root : roots) {
+            root.module().ifPresent(module -> byModule.computeIfAbsent(module, m -> new ArrayList<>())
+                    .add(root));
+        }
+        return byModule;
+    }
+
+    /**
+     * @param project the project of the modules
+     * @param modules the roots of each module
+     * @return the absolute directories of the roots of the modules
+     */
+    static Set<Path> directories(Project project, Map<String, List<SourceRoot>> modules) {
+        Set<Path> directories = new HashSet<>();
+        for (List<SourceRoot> roots : modules.values()) {
+            for (SourceRoot root : roots) {
+                directories.add(
+                        project.getBasedir().resolve(root.directory()).toAbsolutePath().normalize());
+            }
+        }
+        return directories;
+    }
+}
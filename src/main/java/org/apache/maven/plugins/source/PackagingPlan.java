@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+import org.apache.maven.api.plugin.Log;
+
+/**
+ * The entries a sources jar would contain, as reported by the <code>plan</code> mode in place of creating the jar.
+ * <p>
+ * The compressed size of each file is estimated by deflating its first {@value #SAMPLE_SIZE} bytes, plus the size of
+ * its local and central directory headers.
+ *
+ * @since 4.0.0
+ */
+final class PackagingPlan {
+    private static final int SAMPLE_SIZE = 64 * 1024;
+
+    /**
+     * Local file header plus central directory header, without the name.
+     */
+    private static final int HEADERS_SIZE = 30 + 46;
+
+    /**
+     * A planned entry.
+     *
+     * @param name the entry name
+     * @param file the file, <code>null</code> if the entry does not come from a file
+     * @param size the uncompressed size, <code>-1</code> if unknown
+     * @param estimatedSize the estimated compressed size, headers included
+     * @param duplicateOf the file of the entry with the same name kept in the jar, if this one is a duplicate
+     */
+    record Entry(String name, File file, long size, long estimatedSize, File duplicateOf) {}
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    private final EntryNameIndex names = new EntryNameIndex();
+
+    /**
+     * The first entry of each name, by number of the name.
+     */
+    private final List<Entry> firsts = new ArrayList<>();
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    private final byte[] sample = new byte[SAMPLE_SIZE];
+
+    private final byte[] compressed = new byte[SAMPLE_SIZE];
+
+    /**
+     * Adds a file, in archiver order.
+     *
+     * @param name the entry name
+     * @param file the file, <code>null</code> if not a file
+     * @param size the size of the file
+     * @throws IOException in case of an error
+     */
+    void add(String name, File file, long size) throws IOException {
+        int id = names.add(name);
+        Entry first = id < 0 ? firsts.get(-1 - id) : null;
+        if (first != null && DuplicateEntries.isSameFile(first.file(), file)) {
+            // the same file added again, which the archiver writes once
+            return;
+        }
+        long estimatedSize = first == null ? estimate(name, file, size) : 0;
+        Entry entry = new Entry(name, file, size, estimatedSize, first != null ? first.file() : null);
+        entries.add(entry);
+        if (first == null) {
+            firsts.add(entry);
+        }
+    }
+
+    /**
+     * Logs a summary of the plan.
+     *
+     * @param log the log
+     * @param largest the number of largest entries to list
+     */
+    void report(Log log, int largest) {
+        List<Entry> kept = entries.stream().filter(e -> e.duplicateOf() == null).toList();
+        List<Entry> duplicates = entries.stream().filter(e -> e.duplicateOf() != null).toList();
+        long size = kept.stream().mapToLong(e -> Math.max(e.size(), 0)).sum();
+        long estimatedSize = kept.stream().mapToLong(Entry::estimatedSize).sum();
+
+        log.info("Planned " + kept.size() + " entries: " + formatSize(size) + " uncompressed, about "
+                + formatSize(estimatedSize) + " compressed");
+        if (!duplicates.isEmpty()) {
+            log.warn(duplicates.size() + " duplicate entries would be skipped:");
+            for (Entry duplicate : duplicates) {
+                log.warn("  " + duplicate.name() + " from " + duplicate.file() + " (kept " + duplicate.duplicateOf()
+                        + ")");
+            }
+        }
+        if (!kept.isEmpty() && largest > 0) {
+            log.info("Largest entries:");
+            kept.stream()
+                    .sorted(Comparator.comparingLong(Entry::size).reversed())
+                    .limit(largest)
+                    .forEach(e -> log.info("  " + formatSize(e.size()) + " (~" + formatSize(e.estimatedSize())
+                            + ") " + e.name()));
+        }
+        if (log.isDebugEnabled()) {
+            entries.forEach(e -> log.debug("  " + e.name() + " <- " + e.file()));
+        }
+    }
+
+    /**
+     * Writes the planned entries, one per line: uncompressed size, estimated compressed size, name and file.
+     * Duplicates have a <code>-</code> in place of the estimated size.
+     *
+     * @param output the file to write
+     * @throws IOException in case of an error
+     */
+    void write(Path output) throws IOException {
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            for (Entry entry : entries) {
+                writer.write(entry.size() + "\t" + (entry.duplicateOf() == null ? entry.estimatedSize() : "-") + "\t"
+                        + entry.name() + "\t" + (entry.file() != null ? entry.file() : ""));
+                writer.newLine();
+            }
+        }
+    }
+
+    private long estimate(String name, File file, long size) throws IOException {
+        long headers = HEADERS_SIZE + 2L * name.getBytes(StandardCharsets.UTF_8).length;
+        if (file == null || size <= 0) {
+            return headers;
+        }
+        int read;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            read = in.readNBytes(sample, 0, sample.length);
+        }
+        if (read <= 0) {
+            return headers;
+        }
+        deflater.reset();
+        deflater.setInput(sample, 0, read);
+        deflater.finish();
+        long deflated = 0;
+        while (!deflater.finished()) {
+            deflated += deflater.deflate(compressed);
+        }
+        double ratio = Math.min(1.0, (double) deflated / read);
+        return headers + (long) Math.ceil(size * ratio);
+    }
+
+    /**
+     * Releases the native resources used for the estimations.
+     */
+    void close() {
+        deflater.end();
+    }
+
+    static String formatSize(long size) {
+        if (size < 1024) {
+            return size + " B";
+        }
+        if (size < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f KiB", size / 1024.0);
+        }
+        if (size < 1024L * 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f MiB", size / (1024.0 * 1024));
+        }
+        return String.format(Locale.ROOT, "%.1f GiB", size / (1024.0 * 1024 * 1024));
+    }
+}
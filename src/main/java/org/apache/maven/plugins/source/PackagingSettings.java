@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import org.apache.maven.shared.archiver.MavenArchiveConfiguration;
+
+/**
+ * How one jar is written, fixed when its archiver is created. A jar written in the background only reads these
+ * settings, so that the next jar of the execution, such as the jar of another module, can be set up meanwhile.
+ *
+ * @param writer the writer of the jar
+ * @param compression the compression of the entries
+ * @param archive the configuration of the manifest and the Maven descriptor, a copy only read once created
+ * @param localityOrder whether the entries are sorted in locality order
+ * @param sourceIndex whether the source index is added
+ * @param mappedReadThreshold the size from which the files are read mapped in memory
+ * @param blockDeflateThreshold the size from which the entries are deflated in blocks
+ * @param buffers the buffers of the compressed entries
+ * @param workers the threads compressing the entries
+ * @param statistics the statistics of the scans of the directories of the jar
+ * @param tracing the tracing of the execution
+ * @param span the span of the execution
+ * @since 4.0.0
+ */
+record PackagingSettings(
+        ArchiveWriter writer,
+        Compression compression,
+        MavenArchiveConfiguration archive,
+        boolean localityOrder,
+        boolean sourceIndex,
+        long mappedReadThreshold,
+        long blockDeflateThreshold,
+        ScatterBuffers buffers,
+        WorkerBudget workers,
+        ScanStatistics statistics,
+        Tracing tracing,
+        Tracing.Span span) {
+
+    /**
+     * @return whether the entries are written stored, then compressed again with the level and strategy
+     */
+    boolean isRecompressed() {
+        return compression.isRecompressed() && !writer.isSinglePass();
+    }
+
+    /**
+     * @param archive the configuration of the goal
+     * @param manifestFile the manifest file of the jar, <code>null</code> for the one of the configuration
+     * @param forced whether the jar is written even if up to date
+     * @return a copy of the configuration, for one jar
+     */
+    static MavenArchiveConfiguration copy(MavenArchiveConfiguration archive, Path manifestFile, boolean forced) {
+        MavenArchiveConfiguration copy = new MavenArchiveConfiguration();
+        copy.setCompress(archive.isCompress());
+        copy.setRecompressAddedZips(archive.isRecompressAddedZips());
+        copy.setAddMavenDescriptor(archive.isAddMavenDescriptor());
+        copy.setManifestFile(manifestFile != null ? manifestFile : archive.getManifestFile());
+        copy.setManifest(archive.getManifest());
+        copy.setManifestEntries(new LinkedHashMap<>(archive.getManifestEntries()));
+        copy.setManifestSections(new ArrayList<>(archive.getManifestSections()));
+        copy.setPomPropertiesFile(archive.getPomPropertiesFile());
+        copy.setForced(forced);
+        return copy;
+    }
+}
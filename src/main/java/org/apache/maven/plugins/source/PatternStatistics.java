@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.plexus.util.MatchPattern;
+
+/**
+ * Counts the paths matched by each include and exclude pattern, and the time spent matching them in each directory
+ * tree, to find the patterns which never match, as most of the default excludes usually do, and the trees whose
+ * matching is slow.
+ * <p>
+ * Each path is matched again against every pattern one by one, so the statistics are only collected in debug mode.
+ *
+ * @since 4.0.0
+ */
+final class PatternStatistics {
+    private final Map<String, AtomicLong> includes = new LinkedHashMap<>();
+
+    private final Map<String, AtomicLong> excludes = new LinkedHashMap<>();
+
+    private final Map<String, AtomicLong> nanos = new LinkedHashMap<>();
+
+    /**
+     * The patterns of a scanned directory tree, counting their matches.
+     */
+    final class Matcher {
+        private final MatchPattern[] includePatterns;
+
+        private final AtomicLong[] includeHits;
+
+        private final MatchPattern[] excludePatterns;
+
+        private final AtomicLong[] excludeHits;
+
+        private final AtomicLong time;
+
+        private final boolean caseSensitive;
+
+        private Matcher(String root, String[] includes, String[] excludes, boolean caseSensitive) {
+            this.includePatterns = patterns(includes);
+            this.includeHits = hits(PatternStatistics.this.includes, includes);
+            this.excludePatterns = patterns(excludes);
+            this.excludeHits = hits(PatternStatistics.this.excludes, excludes);
+            this.caseSensitive = caseSensitive;
+            synchronized (nanos) {
+                this.time = nanos.computeIfAbsent(root, key -> new AtomicLong());
+            }
+        }
+
+        /**
+         * Counts the patterns matching a path.
+         *
+         * @param name the path, relative to the root
+         */
+        void count(String name) {
+            count(name, includePatterns, includeHits);
+            count(name, excludePatterns, excludeHits);
+        }
+
+        /**
+         * @param nanoTime the time spent matching the paths of the root, in nanoseconds
+         */
+        void addTime(long nanoTime) {
+            time.addAndGet(nanoTime);
+        }
+
+        private void count(String name, MatchPattern[] patterns, AtomicLong[] hits) {
+            for (int i = 0; i < patterns.length; i++) {
+                if (patterns[i].matchPath(name, caseSensitive)) {
+                    hits[i].incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param root the scanned directory
+     * @param includes the include patterns, normalized by the scanner
+     * @param excludes the exclude patterns, normalized by the scanner, with the default excludes
+     * @param caseSensitive whether the patterns are case sensitive
+     * @return the matcher counting the matches of the patterns in the directory
+     */
+    Matcher matcher(String root, String[] includes, String[] excludes, boolean caseSensitive) {
+        return new Matcher(root, includes, excludes, caseSensitive);
+    }
+
+    /**
+     * @return a summary of the matches, one line per root and pattern
+     */
+    List<String> getStatistics() {
+        List<String> lines = new ArrayList<>();
+        synchronized (nanos) {
+            nanos.forEach((root, time) -> lines.add("Matched patterns in "
+                    + TimeUnit.NANOSECONDS.toMillis(time.get()) + " ms under " + root));
+        }
+        synchronized (includes) {
+            includes.forEach((pattern, hits) -> lines.add("Include " + pattern + ": " + hits.get() + " paths"));
+        }
+        synchronized (excludes) {
+            excludes.forEach((pattern, hits) -> lines.add("Exclude " + pattern + ": " + hits.get() + " paths"));
+        }
+        return lines;
+    }
+
+    private static MatchPattern[] patterns(String[] patterns) {
+        MatchPattern[] matchPatterns = new MatchPattern[patterns != null ? patterns.length : 0];
+        for (int i = 0; i < matchPatterns.length; i++) {
+            matchPatterns[i] = MatchPattern.fromString(patterns[i]);
+        }
+        return matchPatterns;
+    }
+
+    private static AtomicLong[] hits(Map<String, AtomicLong> counts, String[] patterns) {
+        AtomicLong[] hits = new AtomicLong[patterns != null ? patterns.length : 0];
+        synchronized (counts) {
+            for (int i = 0; i < hits.length; i++) {
+                hits[i] = counts.computeIfAbsent(patterns[i], key -> new AtomicLong());
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.apache.maven.api.Project;
+import org.apache.maven.api.Session;
+import org.apache.maven.shared.archiver.MavenArchiver;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.jar.JarArchiver;
+import org.codehaus.plexus.archiver.jar.ManifestException;
+
+/**
+ * Writes the jar with the plexus archiver, as {@link MavenArchiver} does for the other packaging plugins. Without a
+ * project, the archiver writes the manifest entries of the configuration only.
+ *
+ * @since 4.0.0
+ */
+final class PlexusArchiveWriter implements ArchiveWriter {
+
+    @Override
+    public void write(
+            MavenArchiver archiver, Session session, Project project, PackagingSettings settings, Path outputFile)
+            throws ArchiverException, IOException {
+        if (project == null) {
+            JarArchiver jarArchiver = archiver.getArchiver();
+            try {
+                jarArchiver.addConfiguredManifest(SourcePackager.getManifest(settings.archive()));
+            } catch (ManifestException e) {
+                throw new ArchiverException("Invalid manifest: " + e.getMessage(), e);
+            }
+            jarArchiver.setDestFile(outputFile.toFile());
+            jarArchiver.setForced(settings.archive().isForced());
+            jarArchiver.createArchive();
+            return;
+        }
+        archiver.setOutputFile(outputFile.toFile());
+        archiver.createArchive(session, project, settings.archive());
+    }
+}
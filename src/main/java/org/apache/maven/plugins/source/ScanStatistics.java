@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the work done scanning the directories of an archive: the entries found, the directories listed and the
+ * file attribute reads, which should stay close to one per entry.
+ * <p>
+ * The archiver scans its directories each time its resources are iterated, so the counts cover all the scans.
+ * In debug mode, the matches of each include and exclude pattern are counted too, on the first scan of each tree.
+ *
+ * @since 4.0.0
+ */
+final class ScanStatistics {
+    private final AtomicLong scans = new AtomicLong();
+
+    private final AtomicLong entries = new AtomicLong();
+
+    private final AtomicLong directories = new AtomicLong();
+
+    private final AtomicLong attributeReads = new AtomicLong();
+
+    private final PatternStatistics patterns;
+
+    ScanStatistics() {
+        this(false);
+    }
+
+    /**
+     * @param countPatterns whether to count the matches of each pattern
+     */
+    ScanStatistics(boolean countPatterns) {
+        this.patterns = countPatterns ? new PatternStatistics() : null;
+    }
+
+    void countScan() {
+        scans.incrementAndGet();
+    }
+
+    void countEntry() {
+        entries.incrementAndGet();
+    }
+
+    void countDirectory() {
+        directories.incrementAndGet();
+    }
+
+    void countAttributeRead() {
+        attributeReads.incrementAndGet();
+    }
+
+    /**
+     * @return the number of entries found
+     */
+    long getEntries() {
+        return entries.get();
+    }
+
+    /**
+     * @return the number of file attribute reads
+     */
+    long getAttributeReads() {
+        return attributeReads.get();
+    }
+
+    /**
+     * @return the statistics of the patterns, or <code>null</code> if they are not counted
+     */
+    PatternStatistics getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * @return the matches of each pattern, empty if they are not counted
+     */
+    List<String> getPatternStatistics() {
+        return patterns != null ? patterns.getStatistics() : List.of();
+    }
+
+    /**
+     * @return a summary of the scans
+     */
+    String getStatistics() {
+        return "Scanned " + scans.get() + " directory trees: " + entries.get() + " entries, " + directories.get()
+                + " directories listed, " + attributeReads.get() + " file attribute reads";
+    }
+}
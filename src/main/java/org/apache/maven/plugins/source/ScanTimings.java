@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The time spent scanning each directory tree of a jar, with the size of the files found, recorded next to the jar,
+ * in a <code>.timings</code> file, for the next build to scan the longest trees first: a large tree scanned last
+ * otherwise keeps one thread busy while the others are idle.
+ * <p>
+ * The trees not scanned by the previous build come first, as their cost is unknown.
+ *
+ * @since 4.0.0
+ */
+final class ScanTimings {
+    private static final String HEADER = "# maven-source-plugin scan timings 1";
+
+    /**
+     * The scan of a directory tree.
+     *
+     * @param nanos the time spent scanning, in nanoseconds
+     * @param bytes the size of the files found
+     */
+    record Timing(long nanos, long bytes) {
+        Timing plus(Timing other) {
+            return new Timing(nanos + other.nanos, bytes + other.bytes);
+        }
+    }
+
+    private final Path file;
+
+    private final Map<String, Timing> previous;
+
+    private final Map<String, Timing> current = new ConcurrentHashMap<>();
+
+    private ScanTimings(Path file, Map<String, Timing> previous) {
+        this.file = file;
+        this.previous = previous;
+    }
+
+    /**
+     * @param jarFile the jar
+     * @return the timings of the previous build of the jar, empty if unknown
+     */
+    static ScanTimings of(Path jarFile) {
+        Path file = jarFile.resolveSibling(jarFile.getFileName() + ".timings");
+        Map<String, Timing> previous = new HashMap<>();
+        try {
+            if (Files.isRegularFile(file)) {
+                List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+                if (!lines.isEmpty() && HEADER.equals(lines.get(0))) {
+                    for (String line : lines.subList(1, lines.size())) {
+                        String[] fields = line.split(" ", 3);
+                        if (fields.length == 3) {
+                            previous.put(
+                                    fields[2], new Timing(Long.parseLong(fields[0]), Long.parseLong(fields[1])));
+                        }
+                    }
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // the timings only decide the order of the scans
+            previous.clear();
+        }
+        return new ScanTimings(file, previous);
+    }
+
+    /**
+     * @return the order of the scans: the unknown trees first, then the longest scans of the previous build first
+     */
+    Comparator<String> longestFirst() {
+        return Comparator.<String, Boolean>comparing(previous::containsKey)
+                .thenComparing(
+                        root -> previous.getOrDefault(root, new Timing(0, 0)),
+                        Comparator.comparingLong(Timing::nanos)
+                                .thenComparingLong(Timing::bytes)
+                                .reversed());
+    }
+
+    /**
+     * Records the scan of a directory tree, added to the previous scans of the tree in this build.
+     *
+     * @param root the directory tree
+     * @param nanos the time spent scanning, in nanoseconds
+     * @param bytes the size of the files found
+     */
+    void record(String root, long nanos, long bytes) {
+        current.merge(root, new Timing(nanos, bytes), Timing::plus);
+    }
+
+    /**
+     * Writes the timings of this build, if any tree was scanned.
+     *
+     * @throws IOException in case of an error
+     */
+    void write() throws IOException {
+        if (current.isEmpty()) {
+            return;
+        }
+        Files.createDirectories(file.getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Map.Entry<String, Timing> entry : current.entrySet()) {
+                writer.write(entry.getValue().nanos() + " " + entry.getValue().bytes() + " " + entry.getKey());
+                writer.newLine();
+            }
+        }
+    }
+}
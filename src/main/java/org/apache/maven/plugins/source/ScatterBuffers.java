@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.SessionData;
+
+/**
+ * Off-heap buffers holding the entries compressed in parallel until they are written to the jar, within a memory
+ * budget: the data exceeding the budget is spilled to temporary files, in the output directory rather than in the
+ * system temporary directory.
+ * <p>
+ * The memory is allocated in direct chunks of {@value #CHUNK_SIZE} bytes, which are reused once the entry holding them
+ * is written. The budget is a {@link Pool} shared by all the executions of a build, as the {@link WorkerBudget}: with
+ * <code>-T</code>, the modules packaged at the same time do not hold a budget each. The volume of spilled data is
+ * counted per execution, to size the budget or the build container.
+ *
+ * @since 4.0.0
+ */
+final class ScatterBuffers {
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final SessionData.Key<Pool> KEY = SessionData.key(Pool.class);
+
+    private static final long STANDALONE_BUDGET = 64L * 1024 * 1024;
+
+    private static volatile Pool standalone;
+
+    /**
+     * The memory of the buffers, shared by the executions using it.
+     */
+    static final class Pool {
+        private final Deque<ByteBuffer> free = new ArrayDeque<>();
+
+        private long budget;
+
+        private long allocated;
+
+        /**
+         * @param budget the maximum memory of the buffers, in bytes
+         */
+        Pool(long budget) {
+            this.budget = budget;
+        }
+
+        /**
+         * @return the maximum memory of the buffers, in bytes
+         */
+        synchronized long getBudget() {
+            return budget;
+        }
+
+        private synchronized void raiseBudget(long budget) {
+            this.budget = Math.max(this.budget, budget);
+        }
+
+        private synchronized ByteBuffer acquire() {
+            ByteBuffer buffer = free.poll();
+            if (buffer == null) {
+                if (allocated + CHUNK_SIZE > budget) {
+                    return null;
+                }
+                buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+                allocated += CHUNK_SIZE;
+            }
+            return buffer.clear();
+        }
+
+        private synchronized void release(List<ByteBuffer> buffers) {
+            free.addAll(buffers);
+        }
+    }
+
+    private final Path spillDirectory;
+
+    private final Pool pool;
+
+    private long inUse;
+
+    private long peakInUse;
+
+    private final AtomicLong spilledBytes = new AtomicLong();
+
+    private final AtomicLong spilledFiles = new AtomicLong();
+
+    /**
+     * @param spillDirectory the directory of the spill files
+     * @param budget the maximum memory of the buffers, in bytes, not shared with other executions
+     */
+    ScatterBuffers(Path spillDirectory, long budget) {
+        this(spillDirectory, new Pool(budget));
+    }
+
+    /**
+     * @param spillDirectory the directory of the spill files
+     * @param pool the memory of the buffers
+     */
+    ScatterBuffers(Path spillDirectory, Pool pool) {
+        this.spillDirectory = spillDirectory;
+        this.pool = pool;
+    }
+
+    /**
+     * @param session the session
+     * @param budget the budget of the execution, in bytes: the pool has the largest budget of the executions
+     * @return the memory of the buffers of the session
+     */
+    static Pool pool(Session session, long budget) {
+        Pool pool = session.getData().computeIfAbsent(KEY, () -> new Pool(budget));
+        pool.raiseBudget(budget);
+        return pool;
+    }
+
+    /**
+     * @return the memory of the buffers of the executions outside of a Maven session, as the {@link SourceBundler}
+     */
+    static Pool standalonePool() {
+        Pool pool = standalone;
+        if (pool == null) {
+            synchronized (ScatterBuffers.class) {
+                pool = standalone;
+                if (pool == null) {
+                    pool = new Pool(STANDALONE_BUDGET);
+                    standalone = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * @return a new empty store
+     */
+    ScatterGatherBackingStore newStore() {
+        return new Store();
+    }
+
+    /**
+     * @return the number of bytes written to spill files
+     */
+    long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    /**
+     * @return a summary of the memory used and the data spilled
+     */
+    synchronized String getStatistics() {
+        return "Compression buffers: " + PackagingPlan.formatSize(peakInUse) + " peak in memory (shared budget "
+                + PackagingPlan.formatSize(pool.getBudget()) + "), " + PackagingPlan.formatSize(spilledBytes.get())
+                + " spilled to " + spilledFiles.get() + " files";
+    }
+
+    private ByteBuffer acquire() {
+        ByteBuffer buffer = pool.acquire();
+        if (buffer != null) {
+            synchronized (this) {
+                inUse += CHUNK_SIZE;
+                peakInUse = Math.max(peakInUse, inUse);
+            }
+        }
+        return buffer;
+    }
+
+    private void release(List<ByteBuffer> buffers) {
+        synchronized (this) {
+            inUse -= (long) buffers.size() * CHUNK_SIZE;
+        }
+        pool.release(buffers);
+    }
+
+    /**
+     * The data of an entry: in memory chunks, then a spill file once the budget is exhausted.
+     */
+    private final class Store implements ScatterGatherBackingStore {
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+
+        private ByteBuffer current;
+
+        private Path spillFile;
+
+        private OutputStream spill;
+
+        @Override
+        public void writeOut(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (spill != null) {
+                    spill.write(data, offset, length);
+                    spilledBytes.addAndGet(length);
+                    return;
+                }
+                if (current == null || !current.hasRemaining()) {
+                    current = acquire();
+                    if (current == null) {
+                        spillFile = Files.createTempFile(spillDirectory, "sources-scatter", ".tmp");
+                        spill = new BufferedOutputStream(Files.newOutputStream(spillFile), CHUNK_SIZE);
+                        spilledFiles.incrementAndGet();
+                        continue;
+                    }
+                    chunks.add(current);
+                }
+                int count = Math.min(length, current.remaining());
+                current.put(data, offset, count);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        @Override
+        public void closeForWriting() throws IOException {
+            if (spill != null) {
+                spill.close();
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            List<InputStream> parts = new ArrayList<>();
+            for (ByteBuffer chunk : chunks) {
+                parts.add(new ByteBufferInputStream(chunk.duplicate().flip()));
+            }
+            if (spillFile != null) {
+                parts.add(Files.newInputStream(spillFile));
+            }
+            return new SequenceInputStream(Collections.enumeration(parts));
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeForWriting();
+            release(chunks);
+            chunks.clear();
+            current = null;
+            if (spillFile != null) {
+                Files.deleteIfExists(spillFile);
+                spillFile = null;
+            }
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.maven.api.Language;
+import org.apache.maven.api.Project;
+import org.apache.maven.api.ProjectScope;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.SessionData;
+import org.apache.maven.api.SourceRoot;
+import org.apache.maven.api.plugin.Log;
+import org.apache.maven.api.services.ProjectManager;
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.components.io.fileselectors.FileSelector;
+import org.codehaus.plexus.components.io.functions.FileSupplier;
+
+/**
+ * Tracks the <code>maven-shared-archive-resources</code> directories (as generated by the
+ * maven-remote-resources-plugin) added to a source archive.
+ * <p>
+ * The directories of a project are resolved once per session, whatever the number of executions packaging it, and
+ * added once per archive, even when they are also resource roots of the project. When several modules are aggregated
+ * into one archive, a file whose entry name was already contributed by another module (typically
+ * <code>META-INF/LICENSE</code> and <code>META-INF/NOTICE</code>) is skipped during scanning, so it is neither read
+ * nor handed over to the archiver: the first module keeps the entry, as the archiver would.
+ *
+ * @since 4.0.0
+ */
+final class SharedArchiveResources {
+    private static final String DIRECTORY_NAME = "maven-shared-archive-resources";
+
+    private static final SessionData.Key<Cache> CACHE = SessionData.key(Cache.class);
+
+    /**
+     * Session wide state, shared by all the executions of the plugin.
+     */
+    static final class Cache {
+        private final ConcurrentMap<String, List<Path>> directories = new ConcurrentHashMap<>();
+    }
+
+    private final Cache cache;
+
+    private final ProjectManager projectManager;
+
+    private final Log log;
+
+    private final Set<Path> addedDirectories = new HashSet<>();
+
+    private final Map<String, File> addedEntries = new HashMap<>();
+
+    private final Set<String> skippedEntries = new HashSet<>();
+
+    SharedArchiveResources(Session session, ProjectManager projectManager, Log log) {
+        this.cache = session.getData().computeIfAbsent(CACHE, Cache::new);
+        this.projectManager = projectManager;
+        this.log = log;
+    }
+
+    /**
+     * @param directory a resource directory
+     * @return whether the directory holds shared archive resources, to add through this class only
+     */
+    static boolean isShared(Path directory) {
+        return directory.endsWith(DIRECTORY_NAME);
+    }
+
+    /**
+     * @param project {@link Project}
+     * @return the shared archive resources directories of the project not yet added to this archive
+     */
+    List<Path> getDirectories(Project project) {
+        List<Path> directories = cache.directories.computeIfAbsent(
+                project.getId() + '@' + project.getBasedir(),
+                k -> projectManager
+                        .getEnabledSourceRoots(project, ProjectScope.MAIN, Language.RESOURCES)
+                        .map(SourceRoot::directory)
+                        .filter(SharedArchiveResources::isShared)
+                        .toList());
+        return directories.stream().filter(this::add).toList();
+    }
+
+    /**
+     * @param directory a shared archive resources directory
+     * @return whether the directory was not added to this archive yet
+     */
+    boolean add(Path directory) {
+        return addedDirectories.add(directory.toAbsolutePath().normalize());
+    }
+
+    /**
+     * @return a selector skipping the files whose entry was already contributed by another directory, called by the
+     *     thread iterating the resources of the archiver, in their order, so that the first module contributing an
+     *     entry keeps it
+     */
+    FileSelector getSelector() {
+        return this::isSelected;
+    }
+
+    private boolean isSelected(FileInfo fileInfo) {
+        if (!fileInfo.isFile() || !(fileInfo instanceof FileSupplier)) {
+            return true;
+        }
+        File file = ((FileSupplier) fileInfo).getFile();
+        String name = fileInfo.getName().replace('\\', '/');
+
+        // the archiver may iterate its resources several times: keep answering the same for the first contributor
+        File first = addedEntries.putIfAbsent(name, file);
+        if (first == null || first.equals(file)) {
+            return true;
+        }
+
+        // and report each skipped name once, not on every iteration
+        if (skippedEntries.add(name)) {
+            log.debug("Skipping " + file + ": " + name + " already added from " + first);
+        }
+        return false;
+    }
+}
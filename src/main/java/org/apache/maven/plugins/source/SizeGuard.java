@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.maven.api.plugin.Log;
+import org.apache.maven.api.plugin.MojoException;
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.components.io.fileselectors.FileSelector;
+import org.codehaus.plexus.components.io.functions.FileSupplier;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+
+/**
+ * Checks the size of the files packaged from the source and resource directories against a per-entry and a total
+ * limit, while the directories are scanned.
+ * <p>
+ * The archiver scans its directories each time its resources are iterated, so the decision taken for a file is kept
+ * and returned again on the next scans: the total only counts each file once.
+ *
+ * @since 4.0.0
+ */
+final class SizeGuard {
+
+    /**
+     * What to do with the files exceeding a limit.
+     */
+    enum Action {
+        /**
+         * Package the files, logging a warning.
+         */
+        WARN,
+        /**
+         * Leave the files out of the jar, logging a warning.
+         */
+        SKIP,
+        /**
+         * Fail the build before the jar is written.
+         */
+        FAIL;
+
+        static Action of(String value) throws MojoException {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new MojoException(
+                        "Invalid size limit action '" + value + "': expected one of warn, skip or fail", e);
+            }
+        }
+    }
+
+    private record Offender(String name, long size, String reason) {}
+
+    private final long maxEntrySize;
+
+    private final long maxTotalSize;
+
+    private final Action action;
+
+    private final Map<String, Boolean> decisions = new HashMap<>();
+
+    private final List<Offender> offenders = new ArrayList<>();
+
+    private long totalSize;
+
+    /**
+     * @param maxEntrySize the maximum size of a file, no limit if not positive
+     * @param maxTotalSize the maximum size of all the files, no limit if not positive
+     * @param action what to do with the files exceeding a limit
+     */
+    SizeGuard(long maxEntrySize, long maxTotalSize, Action action) {
+        this.maxEntrySize = maxEntrySize;
+        this.maxTotalSize = maxTotalSize;
+        this.action = action;
+    }
+
+    /**
+     * @return whether a limit is set
+     */
+    boolean isEnabled() {
+        return maxEntrySize > 0 || maxTotalSize > 0;
+    }
+
+    /**
+     * @return the selector checking the files of a directory, called in the order of the archiver, so that the files
+     *     beyond the total limit are always the last ones
+     */
+    FileSelector getSelector() {
+        return this::isSelected;
+    }
+
+    private synchronized boolean isSelected(FileInfo fileInfo) {
+        if (!fileInfo.isFile()) {
+            return true;
+        }
+        String key = fileInfo instanceof FileSupplier
+                ? ((FileSupplier) fileInfo).getFile().getAbsolutePath()
+                : fileInfo.getName();
+        Boolean decision = decisions.get(key);
+        if (decision == null) {
+            long size = fileInfo instanceof PlexusIoResource ? ((PlexusIoResource) fileInfo).getSize() : -1;
+            decision = size < 0 || check(fileInfo.getName(), size);
+            decisions.put(key, decision);
+        }
+        return decision;
+    }
+
+    private boolean check(String name, long size) {
+        String reason = null;
+        if (maxEntrySize > 0 && size > maxEntrySize) {
+            reason = "larger than " + PackagingPlan.formatSize(maxEntrySize);
+        } else if (maxTotalSize > 0 && totalSize + size > maxTotalSize) {
+            reason = "total would exceed " + PackagingPlan.formatSize(maxTotalSize);
+        }
+        if (reason != null) {
+            offenders.add(new Offender(name, size, reason));
+            if (action == Action.SKIP) {
+                return false;
+            }
+        }
+        totalSize += size;
+        return true;
+    }
+
+    /**
+     * Reports the files exceeding a limit, once the directories have been scanned.
+     *
+     * @param log the log
+     * @throws MojoException if some files exceed a limit and the action is {@link Action#FAIL}
+     */
+    synchronized void report(Log log) throws MojoException {
+        if (offenders.isEmpty()) {
+            return;
+        }
+        String verb =
+                switch (action) {
+                    case WARN -> "packaged anyway";
+                    case SKIP -> "skipped";
+                    case FAIL -> "refused";
+                };
+        log.warn(offenders.size() + " files exceed the size limits and are " + verb + ":");
+        for (Offender offender : offenders) {
+            log.warn("  " + offender.name() + " (" + PackagingPlan.formatSize(offender.size()) + ", "
+                    + offender.reason() + ")");
+        }
+        if (action == Action.FAIL) {
+            throw new MojoException(offenders.size() + " files exceed the size limits of the source archive: "
+                    + "exclude them or raise maxEntrySize/maxTotalSize");
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.maven.api.plugin.MojoException;
+import org.apache.maven.shared.archiver.MavenArchiveConfiguration;
+import org.apache.maven.shared.archiver.MavenArchiver;
+import org.codehaus.plexus.archiver.ArchiverException;
+
+/**
+ * Bundles source directories into a jar outside of a Maven execution, for tools packaging the sources of many
+ * artifacts in one JVM.
+ * <p>
+ * The jar is packaged as by the goals, with the same archiver setup, filters and writing, the zip archive writer
+ * deflating, sorting and indexing the entries in a single pass. Without a project, the manifest only has
+ * <code>Created-By: Maven Source Plugin</code> and the entries of the request, and the jar has no Maven descriptor.
+ * There are no size limits, the first of the files with the same entry name is kept, and the jar is always written
+ * again, without incremental update nor reuse of an installed jar.
+ * <p>
+ * Each call to {@link #bundle(Request)} uses its own archiver, so a bundler can be used by several threads at once.
+ * The threads and the memory compressing the entries are shared by all the bundlers of the JVM.
+ *
+ * @since 4.0.0
+ */
+public final class SourceBundler {
+    /**
+     * A directory to bundle.
+     *
+     * @param directory the directory
+     * @param prefix the path of its files in the jar, ending with <code>/</code>, or <code>null</code> for the root
+     * @param includes the patterns of the files to include, in addition to the ones of the request
+     * @param excludes the patterns of the files to exclude, in addition to the ones of the request
+     */
+    public record Root(Path directory, String prefix, List<String> includes, List<String> excludes) {
+        public Root {
+            Objects.requireNonNull(directory, "directory");
+            if (prefix != null && !prefix.trim().endsWith("/")) {
+                prefix += "/";
+            }
+            includes = includes != null ? List.copyOf(includes) : List.of();
+            excludes = excludes != null ? List.copyOf(excludes) : List.of();
+        }
+
+        /**
+         * @param directory a directory to bundle at the root of the jar, with the filters of the request
+         */
+        public Root(Path directory) {
+            this(directory, null, null, null);
+        }
+    }
+
+    /**
+     * What to bundle, and how.
+     *
+     * @param outputFile the jar to write
+     * @param roots the directories to bundle
+     * @param includes the patterns of the files to include, all files if empty
+     * @param excludes the patterns of the files to exclude
+     * @param useDefaultExcludes whether to exclude the files of version control systems and the like
+     * @param manifestEntries the entries of the main section of the manifest
+     * @param outputTimestamp the timestamp of the entries for reproducible builds, as <code>outputTimestamp</code> in
+     *     the plugin, or <code>null</code>
+     * @param compressionLevel the deflate level, <code>0</code> to store the entries, <code>-1</code> for the default
+     * @param compressionStrategy the deflate strategy: <code>default</code>, <code>filtered</code> or
+     *     <code>huffman</code>
+     * @param storedFiles the patterns of the entries to store without compression
+     * @param localityOrder whether to sort the entries by package, as the <code>locality</code> entry order
+     * @param sourceIndex whether to add the <code>META-INF/sources.idx</code> index
+     */
+    public record Request(
+            Path outputFile,
+            List<Root> roots,
+            List<String> includes,
+            List<String> excludes,
+            boolean useDefaultExcludes,
+            Map<String, String> manifestEntries,
+            String outputTimestamp,
+            int compressionLevel,
+            String compressionStrategy,
+            List<String> storedFiles,
+            boolean localityOrder,
+            boolean sourceIndex) {
+        public Request {
+            Objects.requireNonNull(outputFile, "outputFile");
+            roots = List.copyOf(roots);
+            includes = includes != null ? List.copyOf(includes) : List.of();
+            excludes = excludes != null ? List.copyOf(excludes) : List.of();
+            manifestEntries = manifestEntries != null
+                    ? Collections.unmodifiableMap(new LinkedHashMap<>(manifestEntries))
+                    : Map.of();
+            storedFiles = storedFiles != null ? List.copyOf(storedFiles) : List.of();
+        }
+
+        /**
+         * @param outputFile the jar to write
+         * @param roots the directories to bundle
+         * @return a request with the defaults of the plugin
+         */
+        public static Request of(Path outputFile, List<Root> roots) {
+            return new Request(outputFile, roots, null, null, true, null, null, -1, "default", null, false, false);
+        }
+    }
+
+    /**
+     * The outcome of a bundling.
+     *
+     * @param jarFile the written jar
+     * @param files the number of files in the jar
+     * @param uncompressedSize the total size of the files
+     * @param size the size of the jar
+     * @param duration the time spent
+     */
+    public record Result(Path jarFile, int files, long uncompressedSize, long size, Duration duration) {}
+
+    /**
+     * Creates a bundler compressing with threads shared by all the bundlers of the JVM.
+     */
+    public SourceBundler() {}
+
+    /**
+     * Bundles directories into a jar, replacing it if it exists.
+     *
+     * @param request what to bundle
+     * @return the outcome
+     * @throws IOException in case of an error
+     * @throws IllegalArgumentException if the request is invalid
+     */
+    public Result bundle(Request request) throws IOException {
+        long start = System.nanoTime();
+        Compression compression;
+        try {
+            compression = Compression.of(
+                    request.compressionLevel(),
+                    request.compressionStrategy(),
+                    request.storedFiles().toArray(new String[0]));
+        } catch (MojoException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+
+        Path outputFile = request.outputFile().toAbsolutePath();
+        Files.createDirectories(outputFile.getParent());
+
+        MavenArchiveConfiguration archive = new MavenArchiveConfiguration();
+        archive.setAddMavenDescriptor(false);
+        archive.setManifestEntries(request.manifestEntries());
+        Tracing tracing = Tracing.DISABLED;
+        PackagingSettings settings = new PackagingSettings(
+                new ZipArchiveWriter(),
+                compression,
+                PackagingSettings.copy(archive, null, true),
+                request.localityOrder(),
+                request.sourceIndex(),
+                MappedRegions.DEFAULT_THRESHOLD,
+                0,
+                // the memory of the buffers is shared by all the calls, the spill files are next to the jar
+                new ScatterBuffers(outputFile.getParent(), ScatterBuffers.standalonePool()),
+                WorkerBudget.standalone(),
+                new ScanStatistics(false),
+                tracing,
+                tracing.start("bundle", null));
+
+        SourceJarArchiver jarArchiver = new SourceJarArchiver();
+        MavenArchiver archiver = new MavenArchiver();
+        archiver.setArchiver(jarArchiver);
+        archiver.configureReproducibleBuild(request.outputTimestamp());
+        SourcePackager.configure(jarArchiver, settings);
+        try {
+            for (Root root : request.roots()) {
+                if (Files.isDirectory(root.directory())) {
+                    SourcePackager.addDirectory(
+                            jarArchiver,
+                            root.directory(),
+                            root.prefix(),
+                            SourcePackager.combineIncludes(request.includes(), root.includes()),
+                            SourcePackager.combineExcludes(
+                                    request.useDefaultExcludes(), request.excludes(), root.excludes()),
+                            List.of());
+                }
+            }
+            SourcePackager.write(archiver, null, null, settings, outputFile);
+        } catch (ArchiverException e) {
+            throw new IOException("Error creating source archive " + outputFile + ": " + e.getMessage(), e);
+        }
+
+        int files = 0;
+        long uncompressedSize = 0;
+        try (ZipFile zip = ZipFile.builder().setPath(outputFile).get()) {
+            for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+                if (!entry.isDirectory()) {
+                    files++;
+                    uncompressedSize += entry.getSize();
+                }
+            }
+        }
+        return new Result(
+                outputFile,
+                files,
+                uncompressedSize,
+                Files.size(outputFile),
+                Duration.ofNanos(System.nanoTime() - start));
+    }
+}
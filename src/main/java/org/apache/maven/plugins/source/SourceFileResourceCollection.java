@@ -0,0 +1,402 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.codehaus.plexus.components.io.attributes.FileAttributes;
+import org.codehaus.plexus.components.io.attributes.PlexusIoResourceAttributes;
+import org.codehaus.plexus.components.io.functions.FileSupplier;
+import org.codehaus.plexus.components.io.functions.InputStreamTransformer;
+import org.codehaus.plexus.components.io.functions.ResourceAttributeSupplier;
+import org.codehaus.plexus.components.io.resources.AbstractPlexusIoResource;
+import org.codehaus.plexus.components.io.resources.PlexusIoFileResourceCollection;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+import org.codehaus.plexus.components.io.resources.ResourceFactory;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+/**
+ * The files of a directory, scanned reading the attributes of each file once: the plexus scanner queries the type of
+ * each file several times, then its attributes are read twice to create the resource. The attributes read during the
+ * walk are kept by the resource, so the archiver and the mojo do not query the file system again for the entry.
+ * <p>
+ * The includes, excludes and symbolic links are handled as by {@link DirectoryScanner}, and the resources are
+ * returned in the same order: the directories, then the files. Symbolic links fall back to the plexus resources.
+ * <p>
+ * The first scan can be started ahead, on a worker thread, so that the directory trees of a jar are scanned in
+ * parallel while the archiver iterates them in order. That scan only walks the tree: the file selectors, which decide
+ * across the trees of the jar, run on the thread iterating the resources, in the order of the archiver.
+ *
+ * @since 4.0.0
+ */
+class SourceFileResourceCollection extends PlexusIoFileResourceCollection {
+    private static final String UNIX_ATTRIBUTES =
+            "unix:gid,uid,isSymbolicLink,isRegularFile,isDirectory,isOther,mode,permissions,size,lastModifiedTime";
+
+    private final ScanStatistics statistics;
+
+    private Comparator<String> filenameComparator;
+
+    private volatile Future<List<PlexusIoResource>> prescan;
+
+    private final AtomicBoolean patternsCounted = new AtomicBoolean();
+
+    /**
+     * @param statistics the statistics to count the scan in
+     */
+    SourceFileResourceCollection(ScanStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    @Override
+    public void setFilenameComparator(Comparator<String> filenameComparator) {
+        super.setFilenameComparator(filenameComparator);
+        this.filenameComparator = filenameComparator;
+    }
+
+    /**
+     * Starts the next scan on a worker thread.
+     *
+     * @param workers the worker threads
+     * @param timings the timings to record the scan in
+     * @param tracing the tracing of the scan
+     * @param parent the parent span of the scan
+     */
+    void prescan(WorkerBudget workers, ScanTimings timings, Tracing tracing, Tracing.Span parent) {
+        String root = getRoot();
+        prescan = workers.submit(() -> {
+            try (Tracing.Span span = tracing.start("scan", parent)) {
+                long start = System.nanoTime();
+                List<PlexusIoResource> resources = scanResources(false);
+                long bytes = 0;
+                for (PlexusIoResource resource : resources) {
+                    bytes += resource.isFile() ? resource.getSize() : 0;
+                }
+                timings.record(root, System.nanoTime() - start, bytes);
+                span.attribute("root", root).attribute("entries", resources.size()).attribute("bytes", bytes);
+                return resources;
+            }
+        });
+    }
+
+    /**
+     * @return the key of the scanned tree in the timings
+     */
+    String getRoot() {
+        return getBaseDir().getAbsolutePath();
+    }
+
+    @Override
+    public Iterator<PlexusIoResource> getResources() throws IOException {
+        Future<List<PlexusIoResource>> scanned = prescan;
+        if (scanned != null) {
+            prescan = null;
+            try {
+                return select(scanned.get()).iterator();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while scanning " + getBaseDir());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Error scanning " + getBaseDir() + ": " + e.getCause(), e.getCause());
+            }
+        }
+        return scanResources(true).iterator();
+    }
+
+    /**
+     * @param resources the resources found by a scan
+     * @return the resources selected by the file selectors
+     * @throws IOException in case of an error
+     */
+    private List<PlexusIoResource> select(List<PlexusIoResource> resources) throws IOException {
+        List<PlexusIoResource> selected = new ArrayList<>(resources.size());
+        for (PlexusIoResource resource : resources) {
+            if (isSelected(resource)) {
+                selected.add(resource);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @param select whether to apply the file selectors, only on the thread iterating the resources
+     * @return the resources found
+     * @throws IOException in case of an error
+     */
+    private List<PlexusIoResource> scanResources(boolean select) throws IOException {
+        statistics.countScan();
+        Scanner scanner = new Scanner();
+        List<PlexusIoResource> directories = new ArrayList<>();
+        List<PlexusIoResource> files = new ArrayList<>();
+
+        Path baseDir = getBaseDir().toPath();
+        Map<String, Object> attributes = readAttributes(baseDir);
+        if (isIncludingEmptyDirectories() && scanner.isIncluded("") && !scanner.isExcluded("")) {
+            add(directories, "", baseDir, attributes, select);
+        }
+        // as the plexus scanner, does not enter a linked base directory
+        if (!isSymbolicLink(attributes)) {
+            scan(scanner, baseDir, "", directories, files, select);
+        }
+
+        List<PlexusIoResource> resources = new ArrayList<>(directories.size() + files.size());
+        resources.addAll(directories);
+        resources.addAll(files);
+        return resources;
+    }
+
+    private void scan(
+            Scanner scanner,
+            Path dir,
+            String vpath,
+            List<PlexusIoResource> directories,
+            List<PlexusIoResource> files,
+            boolean select)
+            throws IOException {
+        statistics.countDirectory();
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+            for (Path child : children) {
+                names.add(child.getFileName().toString());
+            }
+        }
+        if (filenameComparator != null) {
+            names.sort(filenameComparator);
+        }
+
+        for (String name : names) {
+            Path child = dir.resolve(name);
+            String vname = vpath + name;
+            Map<String, Object> attributes = readAttributes(child);
+            boolean link = isSymbolicLink(attributes);
+            boolean directory = link ? Files.isDirectory(child) : Boolean.TRUE.equals(attributes.get("isDirectory"));
+            if (directory) {
+                boolean included = scanner.isIncluded(vname);
+                boolean excluded = included && scanner.isExcluded(vname);
+                if (included && !excluded && isIncludingEmptyDirectories()) {
+                    add(directories, vname, child, attributes, select);
+                }
+                // the plexus scanner excludes the content of linked directories
+                if (!link && (included && !excluded || scanner.couldHoldIncluded(vname))) {
+                    scan(scanner, child, vname + File.separator, directories, files, select);
+                }
+            } else if (link ? Files.isRegularFile(child) : Boolean.TRUE.equals(attributes.get("isRegularFile"))) {
+                if (scanner.isIncluded(vname) && !scanner.isExcluded(vname)) {
+                    add(files, vname, child, attributes, select);
+                }
+            }
+        }
+    }
+
+    private void add(
+            List<PlexusIoResource> resources,
+            String vname,
+            Path path,
+            Map<String, Object> attributes,
+            boolean select)
+            throws IOException {
+        statistics.countEntry();
+        File file = path.toFile();
+        String name = getName(vname.replace('\\', '/'));
+        PlexusIoResource resource;
+        InputStreamTransformer transformer = getStreamTransformer();
+        if (isSymbolicLink(attributes) || (transformer != null && transformer != identityTransformer)) {
+            FileAttributes fileAttributes = new FileAttributes(file);
+            statistics.countAttributeRead();
+            resource = ResourceFactory.createResource(
+                    file,
+                    name,
+                    null,
+                    transformer,
+                    mergeAttributes(fileAttributes, fileAttributes.isDirectory()));
+        } else {
+            FileAttributes fileAttributes = toFileAttributes(attributes);
+            resource = new ScannedFileResource(
+                    file, name, fileAttributes, mergeAttributes(fileAttributes, fileAttributes.isDirectory()));
+        }
+        if (!select || isSelected(resource)) {
+            resources.add(resource);
+        }
+    }
+
+    private Map<String, Object> readAttributes(Path path) throws IOException {
+        statistics.countAttributeRead();
+        Set<String> views = path.getFileSystem().supportedFileAttributeViews();
+        String attributes =
+                views.contains("unix") ? UNIX_ATTRIBUTES : views.contains("posix") ? "posix:*" : "basic:*";
+        return Files.readAttributes(path, attributes, LinkOption.NOFOLLOW_LINKS);
+    }
+
+    private static boolean isSymbolicLink(Map<String, Object> attributes) {
+        return Boolean.TRUE.equals(attributes.get("isSymbolicLink"));
+    }
+
+    /**
+     * @param attributes the attributes read for a file
+     * @return the plexus attributes, without the names of the owner and group which jars do not record
+     */
+    @SuppressWarnings("unchecked")
+    private static FileAttributes toFileAttributes(Map<String, Object> attributes) {
+        Object mode = attributes.get("mode");
+        Object permissions = attributes.get("permissions");
+        return new FileAttributes(
+                (Integer) attributes.get("gid"),
+                null,
+                (Integer) attributes.get("uid"),
+                null,
+                mode != null ? (Integer) mode & 0xfff : -1,
+                Boolean.TRUE.equals(attributes.get("isSymbolicLink")),
+                Boolean.TRUE.equals(attributes.get("isRegularFile")),
+                Boolean.TRUE.equals(attributes.get("isDirectory")),
+                Boolean.TRUE.equals(attributes.get("isOther")),
+                permissions != null ? (Set<PosixFilePermission>) permissions : Collections.emptySet(),
+                (Long) attributes.get("size"),
+                (FileTime) attributes.get("lastModifiedTime"));
+    }
+
+    /**
+     * Gives access to the include and exclude matching of the plexus scanner, counting the matches of each pattern
+     * in debug mode. Each path is checked once for inclusion, so the patterns are counted there. Only the first scan
+     * of the collection counts them, as the archiver scans it again on each pass over its resources.
+     */
+    private final class Scanner extends DirectoryScanner {
+        private final PatternStatistics.Matcher matcher;
+
+        Scanner() {
+            String[] includes = SourceFileResourceCollection.this.getIncludes();
+            if (includes != null && includes.length > 0) {
+                setIncludes(includes);
+            }
+            String[] excludes = SourceFileResourceCollection.this.getExcludes();
+            if (excludes != null && excludes.length > 0) {
+                setExcludes(excludes);
+            }
+            if (isUsingDefaultExcludes()) {
+                addDefaultExcludes();
+            }
+            setCaseSensitive(SourceFileResourceCollection.this.isCaseSensitive());
+            setupDefaultFilters();
+            setupMatchPatterns();
+            PatternStatistics patterns = statistics.getPatterns();
+            matcher = patterns != null && patternsCounted.compareAndSet(false, true)
+                    ? patterns.matcher(getBaseDir().getPath(), this.includes, this.excludes, isCaseSensitive)
+                    : null;
+        }
+
+        @Override
+        protected boolean isIncluded(String name) {
+            if (matcher == null) {
+                return super.isIncluded(name);
+            }
+            matcher.count(name);
+            long start = System.nanoTime();
+            boolean included = super.isIncluded(name);
+            matcher.addTime(System.nanoTime() - start);
+            return included;
+        }
+
+        @Override
+        protected boolean isExcluded(String name) {
+            if (matcher == null) {
+                return super.isExcluded(name);
+            }
+            long start = System.nanoTime();
+            boolean excluded = super.isExcluded(name);
+            matcher.addTime(System.nanoTime() - start);
+            return excluded;
+        }
+
+        @Override
+        protected boolean couldHoldIncluded(String name) {
+            if (matcher == null) {
+                return super.couldHoldIncluded(name);
+            }
+            long start = System.nanoTime();
+            boolean couldHold = super.couldHoldIncluded(name);
+            matcher.addTime(System.nanoTime() - start);
+            return couldHold;
+        }
+    }
+
+    /**
+     * A file with the attributes read during the scan.
+     */
+    private static final class ScannedFileResource extends AbstractPlexusIoResource
+            implements ResourceAttributeSupplier, FileSupplier {
+        private final File file;
+
+        private final PlexusIoResourceAttributes attributes;
+
+        ScannedFileResource(
+                File file, String name, FileAttributes fileAttributes, PlexusIoResourceAttributes attributes) {
+            super(
+                    name,
+                    fileAttributes.getLastModifiedTime().toMillis(),
+                    fileAttributes.getSize(),
+                    fileAttributes.isRegularFile(),
+                    fileAttributes.isDirectory(),
+                    true);
+            this.file = file;
+            this.attributes = attributes;
+        }
+
+        @Override
+        public File getFile() {
+            return file;
+        }
+
+        @Override
+        public PlexusIoResourceAttributes getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public InputStream getContents() throws IOException {
+            return Files.newInputStream(file.toPath());
+        }
+
+        @Override
+        public URL getURL() throws IOException {
+            return file.toURI().toURL();
+        }
+    }
+}
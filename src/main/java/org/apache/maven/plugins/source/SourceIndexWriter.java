@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.UnixStat;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * Appends to a sources jar an index of the types it contains, as its last entry, next to the central directory.
+ * <p>
+ * The index is a UTF-8 text file: a header line, then one line per <code>.java</code> entry with the fully qualified
+ * name of the type, a tab and the offset of the local header of the entry in the jar, sorted by type name. A tool
+ * reading the end of the jar can then locate the source of a type without scanning the central directory, and read
+ * it with a single range request.
+ * <p>
+ * The writers of the jar add the index as they write the entries, from the offsets of the entries in the written
+ * jar. A jar written by the plexus archiver gets it afterwards: the entries are copied with their compressed data as
+ * is, in a single pass; as the copy normalizes the local headers, the offsets are taken from the copy while it is
+ * written, the index following the last entry. The index entry gets the time of the reproducible build, or else the
+ * one of the manifest, never the time of the build.
+ *
+ * @since 4.0.0
+ */
+final class SourceIndexWriter {
+    /**
+     * The name of the index entry.
+     */
+    static final String INDEX_NAME = "META-INF/sources.idx";
+
+    static final String INDEX_HEADER = "# sources index 1";
+
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+    private static final String SOURCE_EXTENSION = ".java";
+
+    private final Map<String, Long> offsets = new TreeMap<>();
+
+    private long manifestTime = -1;
+
+    private long newest;
+
+    /**
+     * Creates the index of a jar being written.
+     */
+    SourceIndexWriter() {}
+
+    /**
+     * Adds an entry of the jar, before it is written.
+     *
+     * @param name the name of the entry
+     * @param time the time of the entry
+     * @param offset the offset of the local header of the entry, the number of bytes written so far
+     */
+    void add(String name, long time, long offset) {
+        if (MANIFEST_NAME.equals(name) && manifestTime == -1) {
+            manifestTime = time;
+        }
+        newest = Math.max(newest, time);
+        String type = getTypeName(name);
+        if (type != null) {
+            offsets.putIfAbsent(type, offset);
+        }
+    }
+
+    /**
+     * Writes the index as the next entry of the jar, once the other entries are written.
+     *
+     * @param out the jar
+     * @param lastModifiedTime the time of the entries of a reproducible build, or <code>null</code>
+     * @throws IOException in case of an error
+     */
+    void write(ZipArchiveOutputStream out, FileTime lastModifiedTime) throws IOException {
+        StringBuilder index = new StringBuilder(INDEX_HEADER).append('\n');
+        offsets.forEach((type, offset) -> index.append(type).append('\t').append(offset).append('\n'));
+        ZipArchiveEntry entry = new ZipArchiveEntry(INDEX_NAME);
+        entry.setMethod(ZipEntry.DEFLATED);
+        entry.setUnixMode(UnixStat.FILE_FLAG | 0644);
+        if (lastModifiedTime != null) {
+            entry.setTime(lastModifiedTime.toMillis());
+        } else {
+            // without manifest, the newest entry: same jar, same index
+            entry.setTime(manifestTime != -1 ? manifestTime : newest);
+        }
+        out.putArchiveEntry(entry);
+        out.write(index.toString().getBytes(StandardCharsets.UTF_8));
+        out.closeArchiveEntry();
+    }
+
+    /**
+     * Adds the index to a jar, replacing the previous one if any.
+     *
+     * @param jarFile the sources jar
+     * @param lastModifiedTime the time of the entries of a reproducible build, or <code>null</code>
+     * @throws IOException in case of an error
+     */
+    static void write(Path jarFile, FileTime lastModifiedTime) throws IOException {
+        Path indexed = Files.createTempFile(jarFile.getParent(), jarFile.getFileName().toString(), ".tmp");
+        try {
+            try (ZipFile zip = ZipFile.builder().setPath(jarFile).get();
+                    ZipArchiveOutputStream out = new ZipArchiveOutputStream(indexed)) {
+                out.setEncoding(StandardCharsets.UTF_8.name());
+                SourceIndexWriter index = new SourceIndexWriter();
+                for (ZipArchiveEntry entry : Collections.list(zip.getEntriesInPhysicalOrder())) {
+                    if (INDEX_NAME.equals(entry.getName())) {
+                        continue;
+                    }
+                    // the local header of the entry starts where the copy is
+                    index.add(entry.getName(), entry.getTime(), out.getBytesWritten());
+                    try (InputStream raw = zip.getRawInputStream(entry)) {
+                        out.addRawArchiveEntry(entry, raw);
+                    }
+                }
+                index.write(out, lastModifiedTime);
+            }
+            Files.move(indexed, jarFile, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(indexed);
+        }
+    }
+
+    /**
+     * Reads the index of a jar.
+     *
+     * @param zip the jar
+     * @return the offsets of the entries by type name, empty if the jar has no index
+     * @throws IOException in case of an error
+     */
+    static Map<String, Long> read(ZipFile zip) throws IOException {
+        Map<String, Long> index = new TreeMap<>();
+        ZipArchiveEntry entry = zip.getEntry(INDEX_NAME);
+        if (entry == null) {
+            return index;
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            String[] lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n");
+            for (int i = 1; i < lines.length; i++) {
+                int tab = lines[i].indexOf('\t');
+                index.put(lines[i].substring(0, tab), Long.parseLong(lines[i].substring(tab + 1)));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param name the name of an entry
+     * @return the fully qualified name of the type of a source entry, <code>null</code> for other entries
+     */
+    private static String getTypeName(String name) {
+        if (name.endsWith("/") || !name.endsWith(SOURCE_EXTENSION) || name.startsWith("META-INF/")) {
+            return null;
+        }
+        String type = name.substring(0, name.length() - SOURCE_EXTENSION.length());
+        String simpleName = type.substring(type.lastIndexOf('/') + 1);
+        if ("module-info".equals(simpleName) || "package-info".equals(simpleName)) {
+            return null;
+        }
+        return type.replace('/', '.');
+    }
+}
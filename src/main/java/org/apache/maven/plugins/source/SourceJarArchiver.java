@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.codehaus.plexus.archiver.ArchiveEntry;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.FileSet;
+import org.codehaus.plexus.archiver.jar.JarArchiver;
+import org.codehaus.plexus.archiver.zip.ConcurrentJarCreator;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+
+/**
+ * The {@link JarArchiver} provided to the mojos of this plugin.
+ *
+ * @since 4.0.0
+ */
+class SourceJarArchiver extends JarArchiver {
+    private Compression compression = Compression.DEFAULT;
+
+    private ScanStatistics scanStatistics = new ScanStatistics();
+
+    private long blockThreshold;
+
+    private volatile boolean deferred;
+
+    private final List<SourceFileResourceCollection> collections = new ArrayList<>();
+
+    /**
+     * @param compression the compression of the next archive, for the entries to store without compression
+     */
+    void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * @param scanStatistics the statistics of the scans of the next archive
+     */
+    void setScanStatistics(ScanStatistics scanStatistics) {
+        this.scanStatistics = scanStatistics;
+    }
+
+    /**
+     * @param blockThreshold the size from which the entries of the next archive are stored, to be deflated in parallel
+     *     blocks by the {@link JarRecompressor}, <code>0</code> to deflate them all in the archiver
+     */
+    void setBlockThreshold(long blockThreshold) {
+        this.blockThreshold = blockThreshold;
+        this.deferred = false;
+    }
+
+    /**
+     * @param resource the resource of an entry
+     * @return whether the entry is stored, to be deflated in blocks once the archive is written
+     */
+    boolean defer(PlexusIoResource resource) {
+        if (blockThreshold > 0 && resource.getSize() >= blockThreshold) {
+            deferred = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether entries of the last archive were stored to be deflated in blocks
+     */
+    boolean hasDeferredEntries() {
+        return deferred;
+    }
+
+    /**
+     * Scans the file set with a {@link SourceFileResourceCollection}, configured as the archiver configures its own
+     * collections.
+     */
+    @Override
+    public void addFileSet(FileSet fileSet) throws ArchiverException {
+        File directory = fileSet.getDirectory();
+        if (directory == null) {
+            throw new ArchiverException("The file sets base directory is null.");
+        }
+        if (!directory.isDirectory()) {
+            throw new ArchiverException(directory.getAbsolutePath() + " isn't a directory.");
+        }
+
+        SourceFileResourceCollection collection = new SourceFileResourceCollection(scanStatistics);
+        collection.setFollowingSymLinks(false);
+        collection.setIncludes(fileSet.getIncludes());
+        collection.setExcludes(fileSet.getExcludes());
+        collection.setBaseDir(directory);
+        collection.setFileSelectors(fileSet.getFileSelectors());
+        collection.setIncludingEmptyDirectories(fileSet.isIncludingEmptyDirectories());
+        collection.setPrefix(fileSet.getPrefix());
+        collection.setCaseSensitive(fileSet.isCaseSensitive());
+        collection.setUsingDefaultExcludes(fileSet.isUsingDefaultExcludes());
+        collection.setStreamTransformer(fileSet.getStreamTransformer());
+        collection.setFileMappers(fileSet.getFileMappers());
+        collection.setFilenameComparator(getFilenameComparator());
+
+        if (getOverrideDirectoryMode() > -1
+                || getOverrideFileMode() > -1
+                || getOverrideUid() > -1
+                || getOverrideGid() > -1
+                || getOverrideUserName() != null
+                || getOverrideGroupName() != null) {
+            collection.setOverrideAttributes(
+                    getOverrideUid(),
+                    getOverrideUserName(),
+                    getOverrideGid(),
+                    getOverrideGroupName(),
+                    getOverrideFileMode(),
+                    getOverrideDirectoryMode());
+        }
+        if (getDefaultDirectoryMode() > -1 || getDefaultFileMode() > -1) {
+            collection.setDefaultAttributes(-1, null, -1, null, getDefaultFileMode(), getDefaultDirectoryMode());
+        }
+
+        addResources(collection);
+        collections.add(collection);
+    }
+
+    /**
+     * Starts scanning the file sets added since the last archive on the worker threads, the longest first, so that the
+     * archiver finds them scanned when it iterates them in order.
+     *
+     * @param workers the worker threads
+     * @param timings the timings of the previous scans, to record these ones in
+     * @param tracing the tracing of the scans
+     * @param parent the parent span of the scans
+     */
+    void prescan(WorkerBudget workers, ScanTimings timings, Tracing tracing, Tracing.Span parent) {
+        List<SourceFileResourceCollection> ordered = new ArrayList<>(collections);
+        ordered.sort(Comparator.comparing(SourceFileResourceCollection::getRoot, timings.longestFirst()));
+        for (SourceFileResourceCollection collection : ordered) {
+            collection.prescan(workers, timings, tracing, parent);
+        }
+    }
+
+    @Override
+    protected void cleanUp() throws IOException {
+        super.cleanUp();
+        collections.clear();
+    }
+
+    /**
+     * Stores the entries matching the stored files patterns, and the ones deflated in blocks later: the entry method is
+     * decided when the entry is queued.
+     */
+    @Override
+    protected void zipFile(ArchiveEntry entry, ConcurrentJarCreator zOut, String vPath)
+            throws IOException, ArchiverException {
+        if (isCompress() && (compression.isStored(vPath) || defer(entry.getResource()))) {
+            setCompress(false);
+            try {
+                super.zipFile(entry, zOut, vPath);
+            } finally {
+                setCompress(true);
+            }
+        } else {
+            super.zipFile(entry, zOut, vPath);
+        }
+    }
+
+    /**
+     * The archiver is shared by all the executions of the plugin, and only forgets the resources added to it once an
+     * archive is created. This discards them when the archive is written by other means, or not written at all.
+     *
+     * @throws IOException if a resource collection could not be closed
+     */
+    void discardResources() throws IOException {
+        cleanUp();
+    }
+}
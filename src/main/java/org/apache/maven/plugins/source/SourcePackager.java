@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.api.Project;
+import org.apache.maven.api.Session;
+import org.apache.maven.shared.archiver.MavenArchiveConfiguration;
+import org.apache.maven.shared.archiver.MavenArchiver;
+import org.codehaus.plexus.archiver.Archiver;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.jar.JarArchiver;
+import org.codehaus.plexus.archiver.jar.Manifest;
+import org.codehaus.plexus.archiver.jar.ManifestException;
+import org.codehaus.plexus.archiver.util.DefaultFileSet;
+import org.codehaus.plexus.components.io.fileselectors.FileSelector;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * The packaging of a sources jar, shared by the goals and the {@link SourceBundler}: the setup of the archiver, the
+ * directories added to it, and the writing of the jar with the passes the writer leaves to a copy of it.
+ *
+ * @since 4.0.0
+ */
+final class SourcePackager {
+    /**
+     * The <code>Created-By</code> attribute of the manifest.
+     */
+    static final String CREATED_BY = "Maven Source Plugin";
+
+    private static final String[] DEFAULT_INCLUDES = new String[] {"**/**"};
+
+    private static final String[] DEFAULT_EXCLUDES = new String[] {};
+
+    private SourcePackager() {}
+
+    /**
+     * Sets up the archiver for the next jar.
+     *
+     * @param jarArchiver the archiver
+     * @param settings the settings of the jar
+     */
+    static void configure(JarArchiver jarArchiver, PackagingSettings settings) {
+        // the plexus archiver only deflates with the default level: other levels compress the stored entries again
+        jarArchiver.setCompress(!settings.compression().isStoreAll() && !settings.isRecompressed());
+        if (jarArchiver instanceof SourceJarArchiver) {
+            ((SourceJarArchiver) jarArchiver).setCompression(settings.compression());
+            ((SourceJarArchiver) jarArchiver).setScanStatistics(settings.statistics());
+            ((SourceJarArchiver) jarArchiver).setBlockThreshold(settings.blockDeflateThreshold());
+        }
+    }
+
+    /**
+     * Adds the files of a directory to the archiver.
+     *
+     * @param archiver the archiver
+     * @param directory the directory
+     * @param prefix the path of its files in the jar, ending with <code>/</code>, or <code>null</code> for the root
+     * @param includes the patterns of the files to include
+     * @param excludes the patterns of the files to exclude
+     * @param selectors the selectors of the files, applied in order to the files kept by the patterns
+     * @throws ArchiverException in case of an error
+     */
+    static void addDirectory(
+            Archiver archiver,
+            Path directory,
+            String prefix,
+            String[] includes,
+            String[] excludes,
+            List<FileSelector> selectors)
+            throws ArchiverException {
+        DefaultFileSet fileSet = DefaultFileSet.fileSet(directory.toFile()).includeExclude(includes, excludes);
+        if (prefix != null) {
+            fileSet.prefixed(prefix);
+        }
+        if (!selectors.isEmpty()) {
+            fileSet.setFileSelectors(selectors.toArray(new FileSelector[0]));
+        }
+        archiver.addFileSet(fileSet);
+    }
+
+    /**
+     * Writes the jar of the entries added to the archiver, then copies it again to compress, sort and index its
+     * entries if its writer does not in the same pass.
+     *
+     * @param archiver the archiver, with the entries of the jar
+     * @param session the session, or <code>null</code> without a project
+     * @param project the project, for the manifest and the Maven descriptor, or <code>null</code> for a jar with
+     *     only the manifest entries of the configuration
+     * @param settings the settings of the jar
+     * @param outputFile the jar
+     * @throws ArchiverException in case of an error
+     * @throws IOException in case of an error
+     */
+    static void write(
+            MavenArchiver archiver, Session session, Project project, PackagingSettings settings, Path outputFile)
+            throws ArchiverException, IOException {
+        try (Tracing.Span span = settings.tracing().start("write", settings.span())) {
+            settings.writer().write(archiver, session, project, settings, outputFile);
+            span.attribute("entries", settings.statistics().getEntries()).attribute("bytes", Files.size(outputFile));
+        }
+        if (settings.writer().isSinglePass()) {
+            return;
+        }
+
+        JarArchiver jarArchiver = archiver.getArchiver();
+        boolean deferred =
+                jarArchiver instanceof SourceJarArchiver && ((SourceJarArchiver) jarArchiver).hasDeferredEntries();
+        if (settings.isRecompressed() || deferred) {
+            try (Tracing.Span span = settings.tracing().start("compress", settings.span())) {
+                JarRecompressor recompressor = new JarRecompressor(
+                        settings.compression(),
+                        settings.buffers(),
+                        settings.mappedReadThreshold(),
+                        settings.workers());
+                recompressor.setBlockThreshold(settings.blockDeflateThreshold());
+                recompressor.recompress(outputFile);
+                span.attribute("bytes", Files.size(outputFile));
+            }
+        }
+
+        if (settings.localityOrder()) {
+            LocalityOrder.sort(outputFile);
+        }
+
+        if (settings.sourceIndex()) {
+            SourceIndexWriter.write(outputFile, jarArchiver.getLastModifiedTime());
+        }
+    }
+
+    /**
+     * @param archive the configuration of the jar
+     * @return the manifest of a jar without a project: <code>Created-By</code>, then the manifest entries of the
+     *     configuration
+     * @throws ArchiverException if an entry is invalid
+     */
+    static Manifest getManifest(MavenArchiveConfiguration archive) throws ArchiverException {
+        try {
+            Manifest manifest = new Manifest();
+            manifest.addConfiguredAttribute(new Manifest.Attribute("Created-By", CREATED_BY));
+            for (Map.Entry<String, String> entry : archive.getManifestEntries().entrySet()) {
+                manifest.addConfiguredAttribute(new Manifest.Attribute(entry.getKey(), entry.getValue()));
+            }
+            return manifest;
+        } catch (ManifestException e) {
+            throw new ArchiverException("Invalid manifest entry: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Combines includes and additional includes, defaulting to all files.
+     *
+     * @param includes the includes, may be <code>null</code>
+     * @param additionalIncludes the additional includes, may be <code>null</code>
+     * @return the combined array of includes
+     */
+    static String[] combineIncludes(List<String> includes, List<String> additionalIncludes) {
+        List<String> combinedIncludes = new ArrayList<>();
+
+        if (includes != null) {
+            combinedIncludes.addAll(includes);
+        }
+
+        if (additionalIncludes != null) {
+            combinedIncludes.addAll(additionalIncludes);
+        }
+
+        // If there are no other includes, use the default.
+        if (combinedIncludes.isEmpty()) {
+            combinedIncludes.addAll(Arrays.asList(DEFAULT_INCLUDES));
+        }
+
+        return combinedIncludes.toArray(new String[0]);
+    }
+
+    /**
+     * Combines the default excludes from plexus FileUtils, excludes and additional excludes.
+     *
+     * @param useDefaultExcludes whether to add the default excludes
+     * @param excludes the excludes, may be <code>null</code>
+     * @param additionalExcludes the additional excludes, may be <code>null</code>
+     * @return the combined array of excludes
+     */
+    static String[] combineExcludes(
+            boolean useDefaultExcludes, List<String> excludes, List<String> additionalExcludes) {
+        List<String> combinedExcludes = new ArrayList<>();
+
+        if (useDefaultExcludes) {
+            combinedExcludes.addAll(FileUtils.getDefaultExcludesAsList());
+        }
+
+        if (excludes != null) {
+            combinedExcludes.addAll(excludes);
+        }
+
+        if (additionalExcludes != null) {
+            combinedExcludes.addAll(additionalExcludes);
+        }
+
+        if (combinedExcludes.isEmpty()) {
+            combinedExcludes.addAll(Arrays.asList(DEFAULT_EXCLUDES));
+        }
+
+        return combinedExcludes.toArray(new String[0]);
+    }
+}
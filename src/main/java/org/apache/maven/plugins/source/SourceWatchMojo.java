@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.api.SourceRoot;
+import org.apache.maven.api.plugin.MojoException;
+import org.apache.maven.api.plugin.annotations.Mojo;
+import org.apache.maven.api.plugin.annotations.Parameter;
+
+/**
+ * This goal bundles all the sources into a jar archive, then keeps watching the source and resource roots and updates
+ * the jar incrementally whenever they change, until the build is interrupted. It is intended for local development,
+ * to keep the sources attached in an IDE up to date without running a full <code>package</code> after every edit.
+ *
+ * @since 4.0.0
+ */
+@Mojo(name = "watch")
+public class SourceWatchMojo extends SourceJarNoForkMojo {
+    /**
+     * The time to wait, in milliseconds, for the file system to settle after a change before updating the jar. All
+     * the changes notified during that time are handled by the same update.
+     *
+     * @since 4.0.0
+     */
+    @Parameter(property = "maven.source.watch.delay", defaultValue = "200")
+    protected long watchDelay;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doExecute() throws MojoException {
+        // only compress the changed files on each update
+        incremental = true;
+        packageSources(project);
+
+        // later updates are always written: a deleted file leaves all the remaining sources older than the jar
+        forceCreation = true;
+        attach = false;
+
+        try (SourceWatcher watcher = new SourceWatcher(getWatchedRoots())) {
+            getLog().info("Watching " + watcher.getWatchedDirectories()
+                    + " directories for changes, press Ctrl+C to stop.");
+
+            for (Set<Path> changes = watcher.take(watchDelay); !changes.isEmpty(); changes = watcher.take(watchDelay)) {
+                getLog().info("Updating " + getClassifier() + " jar after " + changes.size() + " change(s)");
+                changes.forEach(path -> getLog().debug("changed " + path));
+                long start = System.nanoTime();
+                packageSources(project);
+                getLog().info("Updated in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            getLog().info("Stopped watching for changes.");
+        } catch (ClosedWatchServiceException e) {
+            getLog().info("Stopped watching for changes.");
+        } catch (IOException e) {
+            throw new MojoException("Error watching source roots: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the source and resource roots of the project, including those not created yet
+     */
+    private Set<Path> getWatchedRoots() {
+        Set<Path> roots = new LinkedHashSet<>(getSources(project));
+        for (SourceRoot resource : getResources(project)) {
+            roots.add(project.getBasedir().resolve(resource.directory()));
+        }
+        return roots;
+    }
+}
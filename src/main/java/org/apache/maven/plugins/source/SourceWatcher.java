@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches source roots for changes, including the roots that do not exist yet, such as the generated sources of a
+ * project not built so far: the nearest existing parent of a missing root is watched until the root is created, then
+ * the root itself. A root deleted meanwhile is watched again from its parent.
+ * <p>
+ * The changes in a parent watched for a missing root are ignored unless they lead to that root, so that writing the
+ * jar in <code>target</code> does not trigger another update when a root below <code>target</code> is missing.
+ *
+ * @since 4.0.0
+ */
+final class SourceWatcher implements Closeable {
+    private final WatchService watchService;
+
+    private final Set<Path> roots = new LinkedHashSet<>();
+
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+
+    /**
+     * @param roots the source roots to watch, existing or not
+     * @throws IOException if the roots could not be watched
+     */
+    SourceWatcher(Collection<Path> roots) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        for (Path root : roots) {
+            this.roots.add(root.toAbsolutePath().normalize());
+        }
+        for (Path root : this.roots) {
+            watch(root);
+        }
+    }
+
+    /**
+     * @return the number of directories watched
+     */
+    int getWatchedDirectories() {
+        return keys.size();
+    }
+
+    /**
+     * Waits for changes in the roots.
+     *
+     * @param delay the time to wait, in milliseconds, for the file system to settle after a change
+     * @return the changed files and directories, empty if nothing is left to watch
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IOException if the new directories could not be watched
+     */
+    Set<Path> take(long delay) throws InterruptedException, IOException {
+        Set<Path> changes = new LinkedHashSet<>();
+        while (changes.isEmpty() && !keys.isEmpty()) {
+            WatchKey key = watchService.take();
+            do {
+                handle(key, changes);
+                key = watchService.poll(delay, TimeUnit.MILLISECONDS);
+            } while (key != null);
+        }
+        return changes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private void handle(WatchKey key, Set<Path> changes) throws IOException {
+        Path directory = keys.get(key);
+        if (directory == null) {
+            key.cancel();
+            return;
+        }
+        boolean inRoot = roots.stream().anyMatch(directory::startsWith);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                if (inRoot) {
+                    changes.add(directory);
+                } else {
+                    rewatchMissingRoots(directory, changes);
+                }
+                continue;
+            }
+            Path changed = directory.resolve((Path) event.context());
+            if (!inRoot) {
+                // a parent of a missing root: only the creation of the root, or of a directory leading to it, matters
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    rewatchMissingRoots(changed, changes);
+                }
+                continue;
+            }
+            changes.add(changed);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+                registerTree(changed);
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+            if (roots.contains(directory)) {
+                // the root was deleted: wait for it to come back
+                watch(directory);
+            }
+        }
+    }
+
+    private void rewatchMissingRoots(Path created, Set<Path> changes) throws IOException {
+        for (Path root : roots) {
+            if (root.startsWith(created)) {
+                watch(root);
+                if (Files.isDirectory(root)) {
+                    changes.add(root);
+                }
+            }
+        }
+    }
+
+    private void watch(Path root) throws IOException {
+        Path directory = root;
+        while (directory != null && !Files.isDirectory(directory)) {
+            directory = directory.getParent();
+        }
+        if (directory == null) {
+            return;
+        }
+        if (directory.equals(root)) {
+            registerTree(root);
+            return;
+        }
+        register(directory);
+        if (Files.isDirectory(directory.resolve(root.getName(directory.getNameCount())))) {
+            // created before the parent was registered
+            watch(root);
+        }
+    }
+
+    private void registerTree(Path root) throws IOException {
+        // WatchService is not recursive: register every directory of the tree
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                register(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void register(Path directory) throws IOException {
+        WatchKey key = directory.register(
+                watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        keys.put(key, directory);
+    }
+}
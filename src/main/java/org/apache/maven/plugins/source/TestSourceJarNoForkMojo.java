@@ -21,6 +21,7 @@ package org.apache.maven.plugins.source;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.apache.maven.api.Language;
 import org.apache.maven.api.Project;
@@ -67,6 +68,18 @@ public class TestSourceJarNoForkMojo extends AbstractSourceJarMojo {
                 .toList();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<SourceRoot> getModuleRoots(Project p) {
+        return Stream.concat(
+                        projectManager.getEnabledSourceRoots(p, ProjectScope.TEST, Language.JAVA_FAMILY),
+                        getResources(p).stream())
+                .filter(root -> root.module().isPresent())
+                .toList();
+    }
+
     /**
      * {@inheritDoc}
      */
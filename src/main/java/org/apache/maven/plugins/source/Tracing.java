@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.api.plugin.Log;
+
+/**
+ * Records spans of the packaging steps, exported as OTLP/JSON traces to a file, one line per export, or to the HTTP
+ * endpoint of a collector, so that the packaging shows in the trace of the build.
+ * <p>
+ * The spans join the trace of the <code>TRACEPARENT</code> environment variable when it is set, as done by the
+ * tools tracing the build. Without a file or an endpoint, the tracing is disabled: its spans record nothing.
+ *
+ * @since 4.0.0
+ */
+final class Tracing {
+    /**
+     * The tracing recording nothing.
+     */
+    static final Tracing DISABLED = new Tracing(null, null, null, null, null);
+
+    private static final Span NOOP = new Span(null, null, null, null);
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Path file;
+
+    private final URI endpoint;
+
+    private final String traceId;
+
+    private final String parentSpanId;
+
+    private final Log log;
+
+    private final List<Span> ended = new ArrayList<>();
+
+    private Tracing(Path file, URI endpoint, String traceId, String parentSpanId, Log log) {
+        this.file = file;
+        this.endpoint = endpoint;
+        this.traceId = traceId;
+        this.parentSpanId = parentSpanId;
+        this.log = log;
+    }
+
+    /**
+     * @param file the file to append the traces to, or <code>null</code>
+     * @param endpoint the URL of the OTLP/HTTP traces endpoint of a collector, or <code>null</code>
+     * @param log the log of the export errors
+     * @return the tracing, disabled without file nor endpoint
+     */
+    static Tracing of(Path file, String endpoint, Log log) {
+        boolean hasEndpoint = endpoint != null && !endpoint.isBlank();
+        if (file == null && !hasEndpoint) {
+            return DISABLED;
+        }
+        String traceId = null;
+        String parentSpanId = null;
+        // version-traceid-parentid-flags
+        String[] traceParent = String.valueOf(System.getenv("TRACEPARENT")).split("-");
+        if (traceParent.length == 4 && traceParent[1].length() == 32 && traceParent[2].length() == 16) {
+            traceId = traceParent[1];
+            parentSpanId = traceParent[2];
+        }
+        return new Tracing(
+                file,
+                hasEndpoint ? URI.create(endpoint.trim()) : null,
+                traceId != null ? traceId : randomId(16),
+                parentSpanId,
+                log);
+    }
+
+    /**
+     * @return whether the spans are recorded
+     */
+    boolean isEnabled() {
+        return this != DISABLED;
+    }
+
+    /**
+     * @param name the name of the span
+     * @param parent the parent span, or <code>null</code> for a span of the build
+     * @return the started span, to close once the step ends
+     */
+    Span start(String name, Span parent) {
+        if (!isEnabled()) {
+            return NOOP;
+        }
+        return new Span(this, name, randomId(8), parent != null && parent.id != null ? parent.id : parentSpanId);
+    }
+
+    /**
+     * Exports the spans ended since the last export. An error is logged, without failing the build.
+     */
+    void export() {
+        List<Span> spans;
+        synchronized (ended) {
+            if (ended.isEmpty()) {
+                return;
+            }
+            spans = new ArrayList<>(ended);
+            ended.clear();
+        }
+        String json = toJson(spans);
+        try {
+            if (file != null) {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                Files.writeString(
+                        file,
+                        json + System.lineSeparator(),
+                        StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+            }
+            if (endpoint != null) {
+                HttpRequest request = HttpRequest.newBuilder(endpoint)
+                        .timeout(Duration.ofSeconds(10))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(json))
+                        .build();
+                HttpResponse<Void> response = HttpClient.newHttpClient()
+                        .send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() / 100 != 2) {
+                    log.warn("Traces rejected by " + endpoint + ": HTTP " + response.statusCode());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Error exporting traces: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while exporting traces");
+        }
+    }
+
+    private String toJson(List<Span> spans) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"resourceSpans\":[{\"resource\":{\"attributes\":[");
+        attribute(json, "service.name", "maven-source-plugin");
+        json.append("]},\"scopeSpans\":[{\"scope\":{\"name\":\"org.apache.maven.plugins.source\"},\"spans\":[");
+        for (int i = 0; i < spans.size(); i++) {
+            Span span = spans.get(i);
+            json.append(i > 0 ? "," : "").append("{\"traceId\":\"").append(traceId);
+            json.append("\",\"spanId\":\"").append(span.id).append('"');
+            if (span.parentId != null) {
+                json.append(",\"parentSpanId\":\"").append(span.parentId).append('"');
+            }
+            json.append(",\"name\":");
+            string(json, span.name);
+            json.append(",\"kind\":1,\"startTimeUnixNano\":\"").append(span.startNanos);
+            json.append("\",\"endTimeUnixNano\":\"").append(span.endNanos).append("\",\"attributes\":[");
+            int j = 0;
+            for (Map.Entry<String, Object> attribute : span.attributes.entrySet()) {
+                json.append(j++ > 0 ? "," : "");
+                attribute(json, attribute.getKey(), attribute.getValue());
+            }
+            json.append("]}");
+        }
+        return json.append("]}]}]}").toString();
+    }
+
+    private static void attribute(StringBuilder json, String key, Object value) {
+        json.append("{\"key\":");
+        string(json, key);
+        if (value instanceof Long) {
+            json.append(",\"value\":{\"intValue\":\"").append(value).append("\"}}");
+        } else {
+            json.append(",\"value\":{\"stringValue\":");
+            string(json, String.valueOf(value));
+            json.append("}}");
+        }
+    }
+
+    private static void string(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static String randomId(int bytes) {
+        byte[] id = new byte[bytes];
+        RANDOM.nextBytes(id);
+        return HexFormat.of().formatHex(id);
+    }
+
+    private static long nowNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    }
+
+    /**
+     * A step of the packaging, with its attributes.
+     */
+    static final class Span implements AutoCloseable {
+        private final Tracing tracing;
+
+        private final String name;
+
+        private final String id;
+
+        private final String parentId;
+
+        private final long startNanos;
+
+        private final long startTime;
+
+        private long endNanos;
+
+        private final Map<String, Object> attributes;
+
+        private Span(Tracing tracing, String name, String id, String parentId) {
+            this.tracing = tracing;
+            this.name = name;
+            this.id = id;
+            this.parentId = parentId;
+            this.startNanos = tracing != null ? nowNanos() : 0;
+            this.startTime = tracing != null ? System.nanoTime() : 0;
+            this.attributes = tracing != null ? new LinkedHashMap<>() : null;
+        }
+
+        /**
+         * @param key the name of the attribute
+         * @param value its value
+         * @return this span
+         */
+        Span attribute(String key, long value) {
+            if (tracing != null) {
+                synchronized (this) {
+                    attributes.put(key, value);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @param key the name of the attribute
+         * @param value its value
+         * @return this span
+         */
+        Span attribute(String key, String value) {
+            if (tracing != null) {
+                synchronized (this) {
+                    attributes.put(key, value);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Ends the span.
+         */
+        @Override
+        public void close() {
+            if (tracing != null) {
+                synchronized (this) {
+                    endNanos = startNanos + (System.nanoTime() - startTime);
+                }
+                synchronized (tracing.ended) {
+                    tracing.ended.add(this);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.api.Session;
+import org.apache.maven.api.SessionData;
+
+/**
+ * The worker threads of the plugin, shared by all its executions in a build: with <code>-T</code>, the modules
+ * packaged at the same time use the same threads rather than a pool each, which would oversubscribe the processors.
+ * <p>
+ * The budget leaves one processor to each other module the reactor builds in parallel, for the compilers and tests
+ * running next to the packaging. The threads steal the work of each other, so an execution with many entries uses the
+ * threads idle in the other executions. They stop after some idle time, so a finished build holds no thread.
+ *
+ * @since 4.0.0
+ */
+final class WorkerBudget {
+    private static final SessionData.Key<WorkerBudget> KEY = SessionData.key(WorkerBudget.class);
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private static volatile WorkerBudget standalone;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * @param parallelism the number of worker threads
+     */
+    WorkerBudget(int parallelism) {
+        this.pool = new ForkJoinPool(
+                parallelism,
+                WorkerBudget::newThread,
+                null,
+                true,
+                0,
+                parallelism,
+                1,
+                null,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param session the session
+     * @return the budget of the session
+     */
+    static WorkerBudget of(Session session) {
+        return session.getData()
+                .computeIfAbsent(
+                        KEY,
+                        () -> new WorkerBudget(parallelism(
+                                Runtime.getRuntime().availableProcessors(), session.getDegreeOfConcurrency())));
+    }
+
+    /**
+     * @return the budget of the executions outside of a Maven session, as the {@link SourceBundler}
+     */
+    static WorkerBudget standalone() {
+        WorkerBudget budget = standalone;
+        if (budget == null) {
+            synchronized (WorkerBudget.class) {
+                budget = standalone;
+                if (budget == null) {
+                    budget = new WorkerBudget(Runtime.getRuntime().availableProcessors());
+                    standalone = budget;
+                }
+            }
+        }
+        return budget;
+    }
+
+    /**
+     * @param processors the available processors
+     * @param degreeOfConcurrency the number of modules the reactor builds in parallel
+     * @return the number of worker threads
+     */
+    static int parallelism(int processors, int degreeOfConcurrency) {
+        return Math.max(1, processors - Math.max(0, degreeOfConcurrency - 1));
+    }
+
+    /**
+     * @return the number of worker threads
+     */
+    int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * @param task a task
+     * @param <T> the type of the result
+     * @return the future result of the task
+     */
+    <T> Future<T> submit(Callable<T> task) {
+        return pool.submit(task);
+    }
+
+    private static ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("maven-source-worker-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
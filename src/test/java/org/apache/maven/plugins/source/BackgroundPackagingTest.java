@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.maven.api.Event;
+import org.apache.maven.api.EventType;
+import org.apache.maven.api.MojoExecution;
+import org.apache.maven.api.Project;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.plugin.Log;
+import org.apache.maven.api.plugin.MojoException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BackgroundPackagingTest {
+
+    @TempDir
+    Path temp;
+
+    private Session session;
+
+    private Project project;
+
+    @BeforeEach
+    void setUp() {
+        session = mock(Session.class);
+        when(session.getData()).thenReturn(new MapSessionData());
+        project = mock(Project.class);
+        when(project.getId()).thenReturn("org.example:app:1.0");
+    }
+
+    @Test
+    void testAwaitedBeforeInstall() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean written = new AtomicBoolean();
+        BackgroundPackaging packaging = BackgroundPackaging.of(session);
+        packaging.submit(
+                project,
+                temp.resolve("app-1.0-sources.jar"),
+                () -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    written.set(true);
+                },
+                mock(Log.class));
+        started.await();
+
+        // the other mojos of the module go on meanwhile
+        packaging.onEvent(mojoStarted("integration-test", "verify"));
+        assertFalse(written.get());
+
+        CompletableFuture.runAsync(release::countDown, CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS));
+        packaging.onEvent(mojoStarted("install", "install"));
+        assertTrue(written.get(), "awaited before the install started");
+    }
+
+    @Test
+    void testFailedWrite() throws Exception {
+        Path jar = temp.resolve("app-1.0-sources.jar");
+        Log log = mock(Log.class);
+        BackgroundPackaging packaging = BackgroundPackaging.of(session);
+        packaging.submit(
+                project,
+                jar,
+                () -> {
+                    try {
+                        Files.write(jar, new byte[] {'P', 'K', 3, 4});
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    throw new MojoException("No space left on device");
+                },
+                log);
+
+        // Maven only logs the errors of the listeners
+        packaging.onEvent(mojoStarted("install", "install"));
+        assertFalse(Files.exists(jar), "partial jar deleted");
+        verify(log).error(anyString(), any(MojoException.class));
+
+        // the next execution of the plugin fails the build, once
+        MojoException failure = assertThrows(MojoException.class, () -> BackgroundPackaging.checkFailures(session));
+        assertEquals("No space left on device", failure.getMessage());
+        BackgroundPackaging.checkFailures(session);
+    }
+
+    private static Event mojoStarted(String goal, String phase) {
+        MojoExecution execution = mock(MojoExecution.class);
+        when(execution.getGoal()).thenReturn(goal);
+        when(execution.getLifecyclePhase()).thenReturn(phase);
+        Event event = mock(Event.class);
+        when(event.getType()).thenReturn(EventType.MOJO_STARTED);
+        when(event.getMojoExecution()).thenReturn(Optional.of(execution));
+        return event;
+    }
+}
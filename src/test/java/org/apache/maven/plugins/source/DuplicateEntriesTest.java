@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.File;
+
+import org.apache.maven.api.plugin.Log;
+import org.apache.maven.api.plugin.MojoException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class DuplicateEntriesTest {
+
+    @Test
+    void testPolicies() {
+        assertThrows(MojoException.class, () -> DuplicateEntries.Policy.of("last"));
+        assertFalse(new DuplicateEntries(DuplicateEntries.Policy.of("first")).isChecked());
+        assertTrue(new DuplicateEntries(DuplicateEntries.Policy.of(" Report ")).isChecked());
+        assertTrue(new DuplicateEntries(DuplicateEntries.Policy.FAIL).isChecked());
+    }
+
+    @Test
+    void testReport() {
+        DuplicateEntries report = new DuplicateEntries(DuplicateEntries.Policy.REPORT);
+        report.add("org/example/A.java", new File("api/src/main/java/org/example/A.java"));
+        report.add("log4j2.xml", new File("api/src/main/resources/log4j2.xml"));
+        report.add("org\\example\\A.java", new File("impl/src/main/java/org/example/A.java"));
+        report.add("log4j2.xml", new File("impl/src/main/resources/log4j2.xml"));
+        report.add("log4j2.xml", null);
+        assertEquals(3, report.getDuplicates());
+
+        Log log = mock(Log.class);
+        report.report(log);
+        verify(log).warn("  log4j2.xml (2 copies)");
+        verify(log).warn("  org/example/A.java (1 copy)");
+    }
+
+    @Test
+    void testFail() {
+        DuplicateEntries fail = new DuplicateEntries(DuplicateEntries.Policy.FAIL);
+        fail.add("log4j2.xml", new File("api/src/main/resources/log4j2.xml"));
+        fail.add("log4j2.xml", new File("impl/src/main/resources/log4j2.xml"));
+        assertThrows(MojoException.class, () -> fail.report(mock(Log.class)));
+    }
+
+    @Test
+    void testSameFileAddedTwice() {
+        DuplicateEntries fail = new DuplicateEntries(DuplicateEntries.Policy.FAIL);
+        File notice = new File("target/maven-shared-archive-resources/META-INF/NOTICE");
+        fail.add("META-INF/NOTICE", notice);
+        fail.add("META-INF/NOTICE", new File("target/maven-shared-archive-resources/META-INF/NOTICE"));
+        fail.add("META-INF/NOTICE", notice.getAbsoluteFile());
+        fail.add("META-INF/NOTICE", new File("target/../target/maven-shared-archive-resources/META-INF/NOTICE"));
+        assertEquals(0, fail.getDuplicates());
+
+        Log log = mock(Log.class);
+        fail.report(log);
+        verify(log, never()).warn(anyString());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EntryNameIndexTest {
+
+    @Test
+    void testAdd() {
+        EntryNameIndex index = new EntryNameIndex();
+        int count = 100_000;
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, index.add("org/example/module" + (i % 100) + "/File" + i + ".java"));
+        }
+        assertEquals(count, index.size());
+
+        assertEquals(-1 - 42, index.add("org/example/module42/File42.java"));
+        assertEquals(count, index.size());
+        assertTrue(index.contains("org/example/module99/File99999.java"));
+        assertFalse(index.contains("org/example/module99/File100000.java"));
+        assertEquals("org/example/module7/File7.java", index.name(7));
+    }
+
+    @Test
+    void testSorted() {
+        EntryNameIndex index = new EntryNameIndex();
+        List<String> names = List.of("b/B.java", "a/é.txt", "a/z.txt", "META-INF/", "a/A.java", "a/中.txt");
+        names.forEach(index::add);
+
+        List<String> sorted = new ArrayList<>();
+        for (int id : index.sorted()) {
+            sorted.add(index.name(id));
+        }
+
+        // the order of the code points
+        assertEquals(List.of("META-INF/", "a/A.java", "a/z.txt", "a/é.txt", "a/中.txt", "b/B.java"), sorted);
+    }
+}
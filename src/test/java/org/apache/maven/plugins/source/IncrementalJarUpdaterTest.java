@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.maven.api.plugin.Log;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class IncrementalJarUpdaterTest {
+
+    @TempDir
+    Path temp;
+
+    private Path jar;
+
+    private List<IncrementalJarUpdater.Input> inputs;
+
+    @BeforeEach
+    void createJar() throws IOException {
+        jar = temp.resolve("test-sources.jar");
+        inputs = new ArrayList<>();
+        inputs.add(input("foo/A.java", "class A {}"));
+        inputs.add(input("foo/B.java", "class B {}"));
+
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            out.write("Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+            out.putNextEntry(new ZipEntry("foo/"));
+            for (IncrementalJarUpdater.Input input : inputs) {
+                out.putNextEntry(new ZipEntry(input.name()));
+                out.write(Files.readAllBytes(input.file().toPath()));
+            }
+        }
+    }
+
+    @Test
+    void testFullRewriteWithoutState() throws IOException {
+        assertFalse(updater("1").update(inputs));
+    }
+
+    @Test
+    void testFullRewriteWhenConfigurationChanged() throws IOException {
+        updater("1").recordState(inputs);
+
+        assertFalse(updater("2").update(inputs));
+    }
+
+    @Test
+    void testUpdateModifiedAndAddedFiles() throws IOException {
+        updater("1").recordState(inputs);
+
+        Files.writeString(inputs.get(0).file().toPath(), "class A { int a; }");
+        inputs.get(0).file().setLastModified(inputs.get(0).file().lastModified() + 10_000);
+        // scanned again by the next build
+        inputs.set(0, new IncrementalJarUpdater.Input(inputs.get(0).name(), inputs.get(0).file()));
+        inputs.add(input("bar/C.java", "class C {}"));
+
+        assertTrue(updater("1").update(inputs));
+
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            assertEquals("class A { int a; }", read(zip, "foo/A.java"));
+            assertEquals("class B {}", read(zip, "foo/B.java"));
+            assertEquals("class C {}", read(zip, "bar/C.java"));
+            assertEquals("Manifest-Version: 1.0\n", read(zip, "META-INF/MANIFEST.MF"));
+            assertTrue(zip.getEntry("bar/").isDirectory());
+        }
+    }
+
+    @Test
+    void testUpdateMappedFiles() throws IOException {
+        updater("1").recordState(inputs);
+
+        Files.writeString(inputs.get(1).file().toPath(), "class B { int b; }");
+        inputs.get(1).file().setLastModified(inputs.get(1).file().lastModified() + 10_000);
+        inputs.set(1, new IncrementalJarUpdater.Input(inputs.get(1).name(), inputs.get(1).file()));
+
+        IncrementalJarUpdater updater = updater("1");
+        updater.setMappedThreshold(1);
+        assertTrue(updater.update(inputs));
+
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            assertEquals("class A {}", read(zip, "foo/A.java"));
+            assertEquals("class B { int b; }", read(zip, "foo/B.java"));
+        }
+    }
+
+    @Test
+    void testFilesReadOnce() throws IOException {
+        updater("1").recordState(inputs);
+
+        Files.writeString(inputs.get(1).file().toPath(), "class B { int b; }");
+        inputs.get(1).file().setLastModified(inputs.get(1).file().lastModified() + 10_000);
+        inputs.set(1, new IncrementalJarUpdater.Input(inputs.get(1).name(), inputs.get(1).file()));
+
+        // the first state has no hash: the fingerprint reads each file, the update reuses what it read
+        IncrementalJarUpdater updater = updater("1");
+        String fingerprint = InstalledSources.fingerprint("1", inputs, false, updater::contentHash);
+        assertTrue(updater.update(inputs));
+        updater.recordState(inputs);
+        updater.close();
+        assertEquals(2, updater.getFileReads());
+        assertEquals(InstalledSources.fingerprint("1", inputs, false), fingerprint);
+
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            assertEquals("class B { int b; }", read(zip, "foo/B.java"));
+        }
+
+        // the hashes are then recorded: nothing is read for an unchanged jar
+        updater = updater("1");
+        assertEquals(fingerprint, InstalledSources.fingerprint("1", inputs, false, updater::contentHash));
+        assertTrue(updater.update(inputs));
+        assertEquals(0, updater.getFileReads());
+    }
+
+    @Test
+    void testRemovedFiles() throws IOException {
+        updater("1").recordState(inputs);
+
+        inputs.remove(1);
+
+        assertTrue(updater("1").update(inputs));
+
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            assertNull(zip.getEntry("foo/B.java"));
+            assertEquals("class A {}", read(zip, "foo/A.java"));
+        }
+    }
+
+    @Test
+    void testUpdateSortsAndIndexesEntries() throws IOException {
+        updater("1").recordState(inputs);
+
+        inputs.add(input("bar/C.java", "class C {}"));
+
+        IncrementalJarUpdater updater = updater("1");
+        updater.setLocalityOrder(true);
+        updater.setSourceIndex(true, null);
+        assertTrue(updater.update(inputs));
+
+        try (org.apache.commons.compress.archivers.zip.ZipFile zip =
+                org.apache.commons.compress.archivers.zip.ZipFile.builder()
+                        .setFile(jar.toFile())
+                        .get()) {
+            List<String> names = new ArrayList<>();
+            for (ZipArchiveEntry entry : Collections.list(zip.getEntriesInPhysicalOrder())) {
+                names.add(entry.getName());
+            }
+            // the index follows the entries, sorted in the same pass
+            assertEquals(SourceIndexWriter.INDEX_NAME, names.remove(names.size() - 1));
+            List<String> sorted = new ArrayList<>(names);
+            sorted.sort(LocalityOrder.COMPARATOR);
+            assertEquals(sorted, names);
+
+            Map<String, Long> index = SourceIndexWriter.read(zip);
+            assertEquals(Set.of("foo.A", "foo.B", "bar.C"), index.keySet());
+            for (String name : List.of("foo/A.java", "foo/B.java", "bar/C.java")) {
+                String type = name.substring(0, name.length() - ".java".length()).replace('/', '.');
+                assertEquals(zip.getEntry(name).getLocalHeaderOffset(), index.get(type));
+            }
+        }
+
+        // updated again, the previous index is replaced
+        assertTrue(updater.update(inputs));
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            assertEquals(
+                    1,
+                    Collections.list(zip.entries()).stream()
+                            .filter(entry -> entry.getName().equals(SourceIndexWriter.INDEX_NAME))
+                            .count());
+        }
+    }
+
+    @Test
+    void testReproducibleBuildRequiresFullRewriteWhenFilesAreAdded() throws IOException {
+        IncrementalJarUpdater updater = new IncrementalJarUpdater(jar, "1", true, buffers(), mock(Log.class));
+        updater.recordState(inputs);
+
+        inputs.add(input("bar/C.java", "class C {}"));
+
+        assertFalse(updater.update(inputs));
+    }
+
+    private IncrementalJarUpdater updater(String fingerprint) {
+        return new IncrementalJarUpdater(jar, fingerprint, false, buffers(), mock(Log.class));
+    }
+
+    private ScatterBuffers buffers() {
+        return new ScatterBuffers(temp, 16 * ScatterBuffers.CHUNK_SIZE);
+    }
+
+    private IncrementalJarUpdater.Input input(String name, String content) throws IOException {
+        File file = temp.resolve("src").resolve(name).toFile();
+        Files.createDirectories(file.toPath().getParent());
+        Files.writeString(file.toPath(), content);
+        return new IncrementalJarUpdater.Input(name, file);
+    }
+
+    private static String read(ZipFile zip, String name) throws IOException {
+        return new String(zip.getInputStream(zip.getEntry(name)).readAllBytes(), StandardCharsets.UTF_8);
+    }
+}
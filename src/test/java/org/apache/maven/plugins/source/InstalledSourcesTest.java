@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.maven.api.Event;
+import org.apache.maven.api.EventType;
+import org.apache.maven.api.Listener;
+import org.apache.maven.api.MojoExecution;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.plugin.Log;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InstalledSourcesTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void testReuseInstalledJar() throws IOException {
+        Path source = Files.writeString(temp.resolve("A.java"), "class A {}");
+        List<IncrementalJarUpdater.Input> inputs = List.of(new IncrementalJarUpdater.Input("A.java", source.toFile()));
+        String fingerprint = InstalledSources.fingerprint("config", inputs, true);
+        assertEquals(fingerprint, InstalledSources.fingerprint("config", inputs, true));
+        assertNotEquals(fingerprint, InstalledSources.fingerprint("other", inputs, true));
+
+        Path built = Files.write(temp.resolve("test-sources.jar"), new byte[] {1, 2, 3});
+        Path installed = temp.resolve("repo/test/1.0/test-1.0-sources.jar");
+        InstalledSources sources = new InstalledSources(installed, mock(Log.class));
+        assertFalse(sources.recordIfInstalled(fingerprint, built), "jar not installed");
+        assertFalse(Files.exists(installed.getParent()), "nothing written in the local repository");
+
+        Files.createDirectories(installed.getParent());
+        Files.copy(built, installed);
+        assertTrue(sources.recordIfInstalled(fingerprint, built));
+        assertTrue(sources.matches(fingerprint));
+        Path reused = temp.resolve("target/test-sources.jar");
+        sources.copyTo(reused);
+        assertEquals(-1, Files.mismatch(installed, reused));
+
+        // the jar is only hashed again when its size or time changed
+        FileTime installTime = Files.getLastModifiedTime(installed);
+        Files.setLastModifiedTime(installed, FileTime.fromMillis(installTime.toMillis() - 60_000));
+        assertTrue(sources.matches(fingerprint), "same content");
+        Files.write(installed, new byte[] {1, 2, 4});
+        Files.setLastModifiedTime(installed, installTime);
+        assertTrue(sources.matches(fingerprint), "same size and time as recorded: not read");
+        Files.copy(built, installed, StandardCopyOption.REPLACE_EXISTING);
+        Files.setLastModifiedTime(installed, installTime);
+
+        Files.writeString(source, "class A { }", StandardCharsets.UTF_8);
+        inputs = List.of(new IncrementalJarUpdater.Input("A.java", source.toFile()));
+        assertFalse(sources.matches(InstalledSources.fingerprint("config", inputs, true)));
+
+        Files.write(installed, new byte[] {1, 2, 4});
+        Files.setLastModifiedTime(installed, FileTime.fromMillis(installTime.toMillis() + 60_000));
+        assertFalse(sources.matches(fingerprint), "jar installed by another build");
+    }
+
+    @Test
+    void testRecordWhenInstalled() throws IOException {
+        Session session = mock(Session.class);
+        when(session.getData()).thenReturn(new MapSessionData());
+        Path built = Files.write(temp.resolve("test-sources.jar"), new byte[] {1, 2, 3});
+        Path installed = temp.resolve("repo/test/1.0/test-1.0-sources.jar");
+        InstalledSources sources = new InstalledSources(installed, mock(Log.class));
+        sources.recordWhenInstalled(session, "fingerprint", built);
+        Listener listener = registeredListener(session);
+
+        listener.onEvent(event(EventType.MOJO_SUCCEEDED, "jar"));
+        Files.createDirectories(installed.getParent());
+        Files.copy(built, installed);
+        assertFalse(sources.matches("fingerprint"), "not recorded before the install");
+
+        listener.onEvent(event(EventType.MOJO_SUCCEEDED, "install"));
+        assertTrue(sources.matches("fingerprint"));
+    }
+
+    private static Listener registeredListener(Session session) {
+        ArgumentCaptor<Listener> listener = ArgumentCaptor.forClass(Listener.class);
+        verify(session).registerListener(listener.capture());
+        return listener.getValue();
+    }
+
+    private static Event event(EventType type, String goal) {
+        MojoExecution execution = mock(MojoExecution.class);
+        when(execution.getGoal()).thenReturn(goal);
+        when(execution.getLifecyclePhase()).thenReturn(goal.equals("install") ? "install" : "package");
+        Event event = mock(Event.class);
+        when(event.getType()).thenReturn(type);
+        when(event.getMojoExecution()).thenReturn(Optional.of(execution));
+        return event;
+    }
+}
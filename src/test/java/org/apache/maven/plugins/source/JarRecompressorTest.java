@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class JarRecompressorTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void testBlockDeflate() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 3_500_000; i++) {
+            text.append("    public static final int CONSTANT_").append(i).append(" = ").append(i * 31).append(";\n");
+        }
+        byte[] large = text.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] small = "class A {}\n".getBytes(StandardCharsets.UTF_8);
+        Path jar = temp.resolve("test-sources.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            putStored(out, "Constants.java", large);
+            putStored(out, "A.java", small);
+        }
+
+        JarRecompressor recompressor = new JarRecompressor(
+                Compression.DEFAULT, new ScatterBuffers(temp, 1024 * 1024), 0, new WorkerBudget(4));
+        recompressor.setBlockThreshold(1024 * 1024);
+        recompressor.recompress(jar);
+
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            ZipEntry entry = zip.getEntry("Constants.java");
+            assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+            assertTrue(entry.getCompressedSize() < large.length / 4);
+            try (InputStream in = zip.getInputStream(entry)) {
+                assertArrayEquals(large, in.readAllBytes());
+            }
+            try (InputStream in = zip.getInputStream(zip.getEntry("A.java"))) {
+                assertArrayEquals(small, in.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void testDeflateAllocation() throws IOException {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemoryEnabled());
+        byte[] data = "class A {\n    int a;\n}\n".getBytes(StandardCharsets.UTF_8);
+        ScatterBuffers buffers = new ScatterBuffers(temp, 1024 * 1024);
+        int entries = 10_000;
+        deflate(data, buffers, entries);
+
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        deflate(data, buffers, entries);
+        long perEntry = (threads.getCurrentThreadAllocatedBytes() - allocated) / entries;
+
+        // a deflater and its buffers take more than 16 KiB
+        assertTrue(perEntry < 1024, perEntry + " bytes allocated per entry");
+    }
+
+    private static void deflate(byte[] data, ScatterBuffers buffers, int entries) throws IOException {
+        for (int i = 0; i < entries; i++) {
+            JarRecompressor.Deflated deflated =
+                    JarRecompressor.deflate(new ByteArrayInputStream(data), Compression.DEFAULT, buffers);
+            assertEquals(data.length, deflated.size());
+            deflated.data().close();
+        }
+    }
+
+    private static void putStored(ZipOutputStream out, String name, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LocalityOrderTest {
+
+    private static final List<String> ORDERED = List.of(
+            "META-INF/",
+            "META-INF/MANIFEST.MF",
+            "module-info.java",
+            "app.properties",
+            "foo/",
+            "foo/package-info.java",
+            "foo/A.java",
+            "foo/B.java",
+            "foo/messages.properties",
+            "foo/bar/",
+            "foo/bar/C.java",
+            "foo/internal/",
+            "foo/internal/D.java",
+            "META-INF/maven/",
+            "META-INF/maven/pom.xml");
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void testComparator() {
+        List<String> names = new ArrayList<>(ORDERED);
+        Collections.reverse(names);
+
+        names.sort(LocalityOrder.COMPARATOR);
+
+        assertEquals(ORDERED, names);
+    }
+
+    @Test
+    void testSort() throws IOException {
+        List<String> names = new ArrayList<>(ORDERED);
+        Collections.shuffle(names);
+        Path jar = temp.resolve("test-sources.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (String name : names) {
+                out.putNextEntry(new ZipEntry(name));
+                if (!name.endsWith("/")) {
+                    out.write(name.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+
+        LocalityOrder.sort(jar);
+
+        try (ZipFile zip = ZipFile.builder().setPath(jar).get()) {
+            List<ZipArchiveEntry> entries = Collections.list(zip.getEntriesInPhysicalOrder());
+            assertEquals(ORDERED, entries.stream().map(ZipArchiveEntry::getName).toList());
+            for (ZipArchiveEntry entry : entries) {
+                if (!entry.isDirectory()) {
+                    assertEquals(
+                            entry.getName(),
+                            new String(zip.getInputStream(entry).readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.apache.maven.api.SessionData;
+
+/**
+ * The session data of a single build.
+ */
+final class MapSessionData implements SessionData {
+    private final Map<Key<?>, Object> data = new ConcurrentHashMap<>();
+
+    @Override
+    public <T> void set(Key<T> key, T value) {
+        data.put(key, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> boolean replace(Key<T> key, T oldValue, T newValue) {
+        return ((Map<Key<T>, T>) (Map<?, ?>) data).replace(key, oldValue, newValue);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Key<T> key) {
+        return (T) data.get(key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T computeIfAbsent(Key<T> key, Supplier<T> supplier) {
+        return (T) data.computeIfAbsent(key, k -> supplier.get());
+    }
+}
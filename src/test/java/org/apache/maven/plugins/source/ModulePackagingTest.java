@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.apache.maven.api.Project;
+import org.apache.maven.api.SourceRoot;
+import org.apache.maven.api.plugin.MojoException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ModulePackagingTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void testByModule() {
+        SourceRoot api = root("org.example.api");
+        SourceRoot impl = root("org.example.impl");
+        SourceRoot apiResources = root("org.example.api");
+        SourceRoot flat = root(null);
+
+        Map<String, List<SourceRoot>> byModule = ModulePackaging.byModule(List.of(api, flat, impl, apiResources));
+
+        assertEquals(List.of("org.example.api", "org.example.impl"), List.copyOf(byModule.keySet()));
+        assertEquals(List.of(api, apiResources), byModule.get("org.example.api"));
+        assertEquals(List.of(impl), byModule.get("org.example.impl"));
+        assertThrows(MojoException.class, () -> ModulePackaging.Mode.of("all"));
+    }
+
+    @Test
+    void testDirectories() {
+        Project project = mock(Project.class);
+        when(project.getBasedir()).thenReturn(temp);
+        SourceRoot api = root("org.example.api", Path.of("src/org.example.api/main/java"));
+        SourceRoot apiResources = root("org.example.api", temp.resolve("src/org.example.api/main/resources"));
+
+        Set<Path> directories =
+                ModulePackaging.directories(project, ModulePackaging.byModule(List.of(api, apiResources)));
+
+        assertEquals(
+                Set.of(
+                        temp.resolve("src/org.example.api/main/java"),
+                        temp.resolve("src/org.example.api/main/resources")),
+                directories);
+    }
+
+    private static SourceRoot root(String module) {
+        SourceRoot root = mock(SourceRoot.class);
+        when(root.module()).thenReturn(Optional.ofNullable(module));
+        return root;
+    }
+
+    private static SourceRoot root(String module, Path directory) {
+        SourceRoot root = root(module);
+        when(root.directory()).thenReturn(directory);
+        return root;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ScanTimingsTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void testLongestFirst() throws IOException {
+        Path jar = temp.resolve("test-sources.jar");
+        ScanTimings timings = ScanTimings.of(jar);
+        timings.record("small", 1_000, 10);
+        timings.record("large", 1_000_000, 10_000);
+        // scanned twice by the archiver
+        timings.record("medium", 300_000, 100);
+        timings.record("medium", 300_000, 100);
+        timings.write();
+
+        List<String> roots = new ArrayList<>(List.of("small", "medium", "new", "large"));
+        roots.sort(ScanTimings.of(jar).longestFirst());
+
+        assertEquals(List.of("new", "large", "medium", "small"), roots);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ScatterBuffersTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void testSpillBeyondBudget() throws IOException {
+        ScatterBuffers buffers = new ScatterBuffers(temp, 2 * ScatterBuffers.CHUNK_SIZE);
+        byte[] data = new byte[5 * ScatterBuffers.CHUNK_SIZE / 2];
+        new Random(0).nextBytes(data);
+
+        ScatterGatherBackingStore store = buffers.newStore();
+        for (int offset = 0; offset < data.length; offset += 1000) {
+            store.writeOut(data, offset, Math.min(1000, data.length - offset));
+        }
+        store.closeForWriting();
+
+        assertEquals(ScatterBuffers.CHUNK_SIZE / 2, buffers.getSpilledBytes());
+        try (InputStream in = store.getInputStream()) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+
+        store.close();
+        assertEquals(0, countFiles());
+
+        // the released memory is reused
+        ScatterGatherBackingStore next = buffers.newStore();
+        next.writeOut(data, 0, 2 * ScatterBuffers.CHUNK_SIZE);
+        next.closeForWriting();
+        assertEquals(ScatterBuffers.CHUNK_SIZE / 2, buffers.getSpilledBytes());
+        next.close();
+    }
+
+    @Test
+    void testSharedBudget() throws IOException {
+        ScatterBuffers.Pool pool = new ScatterBuffers.Pool(2 * ScatterBuffers.CHUNK_SIZE);
+        ScatterBuffers first = new ScatterBuffers(temp, pool);
+        ScatterBuffers second = new ScatterBuffers(temp, pool);
+        byte[] data = new byte[2 * ScatterBuffers.CHUNK_SIZE];
+
+        ScatterGatherBackingStore held = first.newStore();
+        held.writeOut(data, 0, data.length);
+        held.closeForWriting();
+
+        // the other execution spills while the first one holds the whole budget
+        ScatterGatherBackingStore spilled = second.newStore();
+        spilled.writeOut(data, 0, 1000);
+        spilled.closeForWriting();
+        assertEquals(0, first.getSpilledBytes());
+        assertEquals(1000, second.getSpilledBytes());
+        spilled.close();
+
+        held.close();
+        ScatterGatherBackingStore reused = second.newStore();
+        reused.writeOut(data, 0, data.length);
+        reused.closeForWriting();
+        assertEquals(1000, second.getSpilledBytes());
+        reused.close();
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(temp)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.maven.api.Language;
+import org.apache.maven.api.Project;
+import org.apache.maven.api.ProjectScope;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.SourceRoot;
+import org.apache.maven.api.plugin.Log;
+import org.apache.maven.api.services.ProjectManager;
+import org.codehaus.plexus.archiver.ArchiveEntry;
+import org.codehaus.plexus.archiver.ResourceIterator;
+import org.codehaus.plexus.archiver.util.DefaultFileSet;
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.components.io.fileselectors.FileSelector;
+import org.codehaus.plexus.components.io.functions.FileSupplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class SharedArchiveResourcesTest {
+
+    @TempDir
+    Path temp;
+
+    private Session session;
+
+    private ProjectManager projectManager;
+
+    @BeforeEach
+    void setUp() {
+        session = mock(Session.class);
+        when(session.getData()).thenReturn(new MapSessionData());
+        projectManager = mock(ProjectManager.class);
+    }
+
+    @Test
+    void testDirectoriesResolvedOncePerSession() {
+        Project project = mock(Project.class);
+        when(project.getId()).thenReturn("org.example:module:1.0");
+        when(project.getBasedir()).thenReturn(temp);
+        Path shared = temp.resolve("target/maven-shared-archive-resources");
+        Path resources = temp.resolve("src/main/resources");
+        when(projectManager.getEnabledSourceRoots(project, ProjectScope.MAIN, Language.RESOURCES))
+                .thenAnswer(invocation -> Stream.of(root(resources), root(shared)));
+
+        SharedArchiveResources sources = new SharedArchiveResources(session, projectManager, mock(Log.class));
+        assertEquals(List.of(shared), sources.getDirectories(project));
+        assertEquals(List.of(), sources.getDirectories(project), "already added to this archive");
+
+        SharedArchiveResources testSources = new SharedArchiveResources(session, projectManager, mock(Log.class));
+        assertEquals(List.of(shared), testSources.getDirectories(project));
+
+        verify(projectManager, times(1)).getEnabledSourceRoots(project, ProjectScope.MAIN, Language.RESOURCES);
+    }
+
+    @Test
+    void testResourceRootAddedOnce() {
+        Project project = mock(Project.class);
+        when(project.getId()).thenReturn("org.example:module:1.0");
+        when(project.getBasedir()).thenReturn(temp);
+        Path shared = temp.resolve("target/maven-shared-archive-resources");
+        when(projectManager.getEnabledSourceRoots(project, ProjectScope.MAIN, Language.RESOURCES))
+                .thenAnswer(invocation -> Stream.of(root(shared)));
+
+        SharedArchiveResources sources = new SharedArchiveResources(session, projectManager, mock(Log.class));
+        assertTrue(SharedArchiveResources.isShared(shared));
+        assertFalse(SharedArchiveResources.isShared(temp.resolve("src/main/resources")));
+        assertEquals(List.of(shared), sources.getDirectories(project));
+        // the same directory, as a resource root of the project
+        assertFalse(sources.add(temp.resolve("target/../target/maven-shared-archive-resources")));
+    }
+
+    @Test
+    void testNoticeFilesOfSeveralModules() throws IOException {
+        File api = notice("api", "Apache Example API\n");
+        File impl = notice("impl", "Apache Example Implementation\n");
+        Log log = mock(Log.class);
+        FileSelector selector = new SharedArchiveResources(session, projectManager, log).getSelector();
+
+        for (int scan = 0; scan < 3; scan++) {
+            assertTrue(selector.isSelected(fileInfo("META-INF/NOTICE", api)));
+            assertFalse(selector.isSelected(fileInfo("META-INF\\NOTICE", impl)));
+        }
+
+        // once, not on every scan of the archiver
+        verify(log, times(1)).debug(anyString());
+        verify(log, never()).warn(anyString());
+    }
+
+    @Test
+    void testFirstRootWinsAfterPrescan() throws Exception {
+        File api = notice("api", "Apache Example API\n");
+        File impl = notice("impl", "Apache Example Implementation " + "with a longer notice\n".repeat(100));
+        ScanTimings timings = ScanTimings.of(temp.resolve("target/test-sources.jar"));
+        // the second root was the longest to scan: it is scanned first
+        timings.record(impl.getParentFile().getAbsolutePath(), 1_000_000, 10_000);
+        timings.record(api.getParentFile().getAbsolutePath(), 1_000, 10);
+        timings.write();
+
+        for (int build = 0; build < 10; build++) {
+            SourceJarArchiver archiver = new SourceJarArchiver();
+            FileSelector selector = new SharedArchiveResources(session, projectManager, mock(Log.class)).getSelector();
+            for (File notice : List.of(api, impl)) {
+                DefaultFileSet fileSet = DefaultFileSet.fileSet(notice.getParentFile()).prefixed("META-INF/");
+                fileSet.setFileSelectors(new FileSelector[] {selector});
+                archiver.addFileSet(fileSet);
+            }
+            archiver.prescan(
+                    new WorkerBudget(2),
+                    ScanTimings.of(temp.resolve("target/test-sources.jar")),
+                    Tracing.DISABLED,
+                    Tracing.DISABLED.start("package", null));
+
+            List<File> files = new ArrayList<>();
+            ResourceIterator iterator = archiver.getResources();
+            while (iterator.hasNext()) {
+                ArchiveEntry entry = iterator.next();
+                if (entry.getType() == ArchiveEntry.FILE) {
+                    files.add(((FileSupplier) entry.getResource()).getFile());
+                }
+            }
+            archiver.discardResources();
+
+            // in archiver order, whatever the order of the scans
+            assertEquals(List.of(api), files);
+        }
+    }
+
+    private File notice(String module, String content) throws IOException {
+        Path directory = Files.createDirectories(temp.resolve(module + "/target/maven-shared-archive-resources"));
+        return Files.writeString(directory.resolve("NOTICE"), content).toFile();
+    }
+
+    private static SourceRoot root(Path directory) {
+        SourceRoot root = mock(SourceRoot.class);
+        when(root.directory()).thenReturn(directory);
+        return root;
+    }
+
+    private static FileInfo fileInfo(String name, File file) {
+        FileInfo fileInfo = mock(FileInfo.class, withSettings().extraInterfaces(FileSupplier.class));
+        when(fileInfo.isFile()).thenReturn(true);
+        when(fileInfo.getName()).thenReturn(name);
+        when(((FileSupplier) fileInfo).getFile()).thenReturn(file);
+        return fileInfo;
+    }
+}
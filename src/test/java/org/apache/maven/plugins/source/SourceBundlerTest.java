@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SourceBundlerTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void testBundle() throws Exception {
+        Path sources = temp.resolve("src");
+        write(sources.resolve("foo/A.java"), "class A {}");
+        write(sources.resolve("foo/internal/B.java"), "class B {}");
+        write(sources.resolve("foo/notes.txt"), "notes");
+        Path resources = temp.resolve("resources");
+        write(resources.resolve("app.properties"), "key=value");
+
+        SourceBundler bundler = new SourceBundler();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<SourceBundler.Result>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                SourceBundler.Request request = new SourceBundler.Request(
+                        temp.resolve("out/bundle" + i + "-sources.jar"),
+                        List.of(
+                                new SourceBundler.Root(sources),
+                                new SourceBundler.Root(resources, "res", List.of("*.properties"), null)),
+                        null,
+                        List.of("**/*.txt"),
+                        true,
+                        Map.of("Implementation-Title", "bundle" + i),
+                        "2024-01-01T00:00:00Z",
+                        9,
+                        "default",
+                        null,
+                        true,
+                        true);
+                results.add(executor.submit(() -> bundler.bundle(request)));
+            }
+            for (int i = 0; i < 4; i++) {
+                SourceBundler.Result result = results.get(i).get();
+                assertEquals(5, result.files());
+                assertEquals(Files.size(result.jarFile()), result.size());
+                try (ZipFile zip = ZipFile.builder().setPath(result.jarFile()).get()) {
+                    List<String> names = new ArrayList<>();
+                    for (ZipArchiveEntry entry : Collections.list(zip.getEntriesInPhysicalOrder())) {
+                        names.add(entry.getName());
+                    }
+                    assertEquals(
+                            List.of(
+                                    "META-INF/",
+                                    "META-INF/MANIFEST.MF",
+                                    "foo/",
+                                    "foo/A.java",
+                                    "res/",
+                                    "res/app.properties",
+                                    "foo/internal/",
+                                    "foo/internal/B.java",
+                                    SourceIndexWriter.INDEX_NAME),
+                            names);
+                    assertTrue(SourceIndexWriter.read(zip).containsKey("foo.A"));
+                    String manifest = new String(
+                            zip.getInputStream(zip.getEntry("META-INF/MANIFEST.MF"))
+                                    .readAllBytes());
+                    assertTrue(manifest.contains("Implementation-Title: bundle" + i), manifest);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.codehaus.plexus.components.io.resources.PlexusIoFileResourceCollection;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SourceFileResourceCollectionTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void testSameResourcesAsPlexus() throws IOException {
+        write("foo/A.java", "class A {}");
+        write("foo/bar/B.java", "class B {}");
+        write("foo/bar/notes.txt", "notes");
+        write("foo/.git/config", "[core]");
+        write("baz/C.java", "class C {}");
+        Files.createDirectories(temp.resolve("empty"));
+
+        ScanStatistics statistics = new ScanStatistics();
+        SourceFileResourceCollection collection = new SourceFileResourceCollection(statistics);
+        PlexusIoFileResourceCollection plexus = new PlexusIoFileResourceCollection();
+        for (PlexusIoFileResourceCollection c : List.of(collection, plexus)) {
+            c.setBaseDir(temp.toFile());
+            c.setPrefix("src/");
+            c.setIncludes(new String[] {"**/**"});
+            c.setExcludes(new String[] {"**/*.txt"});
+            c.setUsingDefaultExcludes(true);
+            c.setFilenameComparator(Comparator.naturalOrder());
+        }
+
+        List<PlexusIoResource> expected = list(plexus.getResources());
+        List<PlexusIoResource> actual = list(collection.getResources());
+
+        assertEquals(names(expected), names(actual));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getSize(), actual.get(i).getSize(), expected.get(i).getName());
+            assertEquals(
+                    expected.get(i).getLastModified(),
+                    actual.get(i).getLastModified(),
+                    expected.get(i).getName());
+            assertEquals(expected.get(i).isFile(), actual.get(i).isFile(), expected.get(i).getName());
+        }
+        // one read per file or directory found, and for the base directory
+        assertEquals(11, statistics.getAttributeReads());
+        assertEquals(actual.size(), statistics.getEntries());
+    }
+
+    @Test
+    void testPatternStatistics() throws IOException {
+        write("foo/A.java", "class A {}");
+        write("foo/bar/notes.txt", "notes");
+        write("foo/.git/config", "[core]");
+
+        ScanStatistics statistics = new ScanStatistics(true);
+        SourceFileResourceCollection collection = new SourceFileResourceCollection(statistics);
+        collection.setBaseDir(temp.toFile());
+        collection.setIncludes(new String[] {"**/*.java", "**/*.txt"});
+        collection.setExcludes(new String[] {"**/*.txt"});
+        collection.setUsingDefaultExcludes(true);
+
+        // the prescan, the checks, the inputs and the write each scan the tree again
+        for (int scan = 0; scan < 4; scan++) {
+            assertEquals(List.of("foo/A.java"), names(list(collection.getResources())));
+        }
+
+        List<String> lines = statistics.getPatternStatistics();
+        assertTrue(lines.contains("Include **/*.java: 1 paths"), lines.toString());
+        assertTrue(lines.contains("Include **/*.txt: 1 paths"), lines.toString());
+        assertTrue(lines.contains("Exclude **/*.txt: 1 paths"), lines.toString());
+        assertTrue(lines.contains("Exclude **/.git: 1 paths"), lines.toString());
+        assertTrue(lines.contains("Exclude **/.svn: 0 paths"), lines.toString());
+        assertTrue(lines.get(0).startsWith("Matched patterns in "), lines.toString());
+    }
+
+    private void write(String name, String content) throws IOException {
+        Path file = temp.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    private static List<PlexusIoResource> list(Iterator<PlexusIoResource> resources) {
+        List<PlexusIoResource> list = new ArrayList<>();
+        resources.forEachRemaining(list::add);
+        return list;
+    }
+
+    private static List<String> names(List<PlexusIoResource> resources) {
+        return resources.stream().map(PlexusIoResource::getName).toList();
+    }
+}
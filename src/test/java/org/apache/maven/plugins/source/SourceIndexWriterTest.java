@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SourceIndexWriterTest {
+
+    private static final long MANIFEST_TIME = 1_700_000_000_000L;
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void testIndexPointsToEntries() throws IOException {
+        Path jar = temp.resolve("test-sources.jar");
+        // ZipOutputStream writes data descriptors, that the copy drops: offsets change
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (String name : new String[] {
+                "META-INF/MANIFEST.MF",
+                "foo/",
+                "foo/B.java",
+                "foo/A.java",
+                "foo/package-info.java",
+                "module-info.java",
+                "foo/app.properties"
+            }) {
+                ZipEntry entry = new ZipEntry(name);
+                entry.setTime(name.startsWith("META-INF/") ? MANIFEST_TIME : MANIFEST_TIME + 3600_000);
+                out.putNextEntry(entry);
+                out.write(name.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        SourceIndexWriter.write(jar, null);
+        // a second write replaces the index
+        SourceIndexWriter.write(jar, null);
+
+        try (ZipFile zip = ZipFile.builder().setPath(jar).get()) {
+            List<ZipArchiveEntry> entries = Collections.list(zip.getEntriesInPhysicalOrder());
+            assertEquals(8, entries.size());
+            assertEquals(SourceIndexWriter.INDEX_NAME, entries.get(entries.size() - 1).getName());
+            // the time of the manifest, not the one of the build
+            assertEquals(MANIFEST_TIME, entries.get(entries.size() - 1).getTime());
+
+            Map<String, Long> index = SourceIndexWriter.read(zip);
+            assertEquals(List.of("foo.A", "foo.B"), List.copyOf(index.keySet()));
+            assertEquals(zip.getEntry("foo/A.java").getLocalHeaderOffset(), index.get("foo.A"));
+            assertEquals(zip.getEntry("foo/B.java").getLocalHeaderOffset(), index.get("foo.B"));
+            try (InputStream in = zip.getInputStream(zip.getEntry("foo/B.java"))) {
+                assertEquals("foo/B.java", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    void testIndexTimeOfReproducibleBuild() throws IOException {
+        Path jar = temp.resolve("test-sources.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry("foo/A.java"));
+            out.write("class A {}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        FileTime outputTimestamp = FileTime.fromMillis(MANIFEST_TIME - 7200_000);
+        SourceIndexWriter.write(jar, outputTimestamp);
+
+        try (ZipFile zip = ZipFile.builder().setPath(jar).get()) {
+            assertEquals(outputTimestamp.toMillis(), zip.getEntry(SourceIndexWriter.INDEX_NAME).getTime());
+            assertEquals(Map.of("foo.A", 0L), SourceIndexWriter.read(zip));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SourceWatcherTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void testChangeCycles() throws Exception {
+        Path java = Files.createDirectories(temp.resolve("src/main/java/org/example"))
+                .getParent()
+                .getParent();
+        Path target = Files.createDirectories(temp.resolve("target"));
+        Path generated = target.resolve("generated-sources/annotations");
+
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            try (SourceWatcher watcher = new SourceWatcher(List.of(java, generated))) {
+                // the tree of the existing root, and the parent of the missing one
+                assertEquals(4, watcher.getWatchedDirectories());
+
+                Files.writeString(target.resolve("test-sources.jar"), "not a source");
+                Path a = Files.writeString(java.resolve("org/example/A.java"), "class A {}");
+                Set<Path> changes = watcher.take(50);
+                assertTrue(changes.contains(a), changes::toString);
+                assertFalse(changes.contains(target.resolve("test-sources.jar")), changes::toString);
+
+                Files.createDirectories(generated.resolve("org/example"));
+                assertFalse(watcher.take(50).isEmpty());
+
+                Path b = Files.writeString(generated.resolve("org/example/B.java"), "class B {}");
+                Set<Path> seen = new HashSet<>();
+                while (!seen.contains(b)) {
+                    seen.addAll(watcher.take(50));
+                }
+            }
+        });
+    }
+}
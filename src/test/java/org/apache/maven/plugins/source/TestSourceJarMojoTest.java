@@ -18,14 +18,33 @@
  */
 package org.apache.maven.plugins.source;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.maven.api.Language;
 import org.apache.maven.api.Project;
 import org.apache.maven.api.ProjectScope;
+import org.apache.maven.api.SourceRoot;
 import org.apache.maven.api.di.Provides;
+import org.apache.maven.api.plugin.MojoException;
 import org.apache.maven.api.services.ProjectManager;
 import org.apache.maven.impl.DefaultSourceRoot;
 import org.apache.maven.impl.InternalSession;
@@ -37,7 +56,11 @@ import org.apache.maven.testing.plugin.stubs.SessionMock;
 import org.junit.jupiter.api.Test;
 
 import static org.apache.maven.testing.plugin.MojoExtension.getBasedir;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
@@ -135,6 +158,366 @@ public class TestSourceJarMojoTest extends AbstractSourcePluginTestCase {
         });
     }
 
+    @Test
+    @InjectMojo(goal = "test-jar")
+    @Basedir("${basedir}/target/test-classes/unit/project-003")
+    @MojoParameter(name = "classifier", value = "test-plan")
+    @MojoParameter(name = "plan", value = "true")
+    @MojoParameter(name = "planFile", value = "target/test-plan.txt")
+    public void testPlan(AbstractSourceJarMojo mojo) throws Exception {
+        mojo.execute();
+
+        File target = new File(getBasedir(), "target");
+        File expectedFile = new File(target, FINAL_NAME_PREFIX + "project-003" + FINAL_NAME_SUFFIX + "-test-plan.jar");
+        assertFalse(expectedFile.exists(), "Archive should not have been created in plan mode");
+
+        List<String> planned = Files.readAllLines(new File(target, "test-plan.txt").toPath());
+        assertEquals(2, planned.size(), "Planned entries " + planned);
+        assertTrue(planned.stream().anyMatch(line -> line.contains("\tfoo/project003/AppTest.java\t")));
+        assertTrue(planned.stream().anyMatch(line -> line.contains("\ttest-default-configuration.properties\t")));
+    }
+
+    @Test
+    @InjectMojo(goal = "test-jar")
+    @Basedir("${basedir}/target/test-classes/unit/project-003")
+    @MojoParameter(name = "classifier", value = "test-size-limit")
+    @MojoParameter(name = "maxEntrySize", value = "1024")
+    @MojoParameter(name = "sizeLimitAction", value = "skip")
+    public void testSkipOversizedEntries(AbstractSourceJarMojo mojo) throws Exception {
+        mojo.execute();
+
+        File target = new File(getBasedir(), "target");
+        assertJarContent(
+                new File(target, FINAL_NAME_PREFIX + "project-003" + FINAL_NAME_SUFFIX + "-test-size-limit.jar"),
+                new String[] {
+                    "test-default-configuration.properties",
+                    "foo/project003/",
+                    "foo/",
+                    "META-INF/MANIFEST.MF",
+                    "META-INF/",
+                    "META-INF/maven/",
+                    "META-INF/maven/source/",
+                    "META-INF/maven/source/maven-source-plugin-test-project-003/",
+                    "META-INF/maven/source/maven-source-plugin-test-project-003/pom.properties",
+                    "META-INF/maven/source/maven-source-plugin-test-project-003/pom.xml"
+                });
+    }
+
+    @Test
+    @InjectMojo(goal = "test-jar")
+    @Basedir("${basedir}/target/test-classes/unit/project-003")
+    @MojoParameter(name = "classifier", value = "test-size-fail")
+    @MojoParameter(name = "maxTotalSize", value = "1024")
+    @MojoParameter(name = "sizeLimitAction", value = "fail")
+    public void testFailOnTotalSize(AbstractSourceJarMojo mojo) throws Exception {
+        assertThrows(MojoException.class, mojo::execute);
+
+        File target = new File(getBasedir(), "target");
+        File expectedFile =
+                new File(target, FINAL_NAME_PREFIX + "project-003" + FINAL_NAME_SUFFIX + "-test-size-fail.jar");
+        assertFalse(expectedFile.exists(), "Archive should not have been created");
+    }
+
+    @Test
+    @InjectMojo(goal = "test-jar")
+    @Basedir("${basedir}/target/test-classes/unit/project-003")
+    @MojoParameter(name = "classifier", value = "test-compression")
+    @MojoParameter(name = "compressionLevel", value = "9")
+    @MojoParameter(name = "compressionStrategy", value = "filtered")
+    @MojoParameter(name = "storedFiles", value = "**/*.properties")
+    @MojoParameter(name = "mappedReadThreshold", value = "1")
+    public void testCompression(AbstractSourceJarMojo mojo) throws Exception {
+        mojo.execute();
+
+        File target = new File(getBasedir(), "target");
+        File jar = new File(target, FINAL_NAME_PREFIX + "project-003" + FINAL_NAME_SUFFIX + "-test-compression.jar");
+        try (ZipFile zip = new ZipFile(jar)) {
+            ZipEntry source = zip.getEntry("foo/project003/AppTest.java");
+            assertEquals(ZipEntry.DEFLATED, source.getMethod());
+            assertTrue(source.getCompressedSize() < source.getSize());
+            assertEquals(ZipEntry.STORED, zip.getEntry("test-default-configuration.properties").getMethod());
+            try (InputStream in = zip.getInputStream(source)) {
+                byte[] data = in.readAllBytes();
+                assertEquals(source.getSize(), data.length);
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                assertEquals(source.getCrc(), crc.getValue());
+            }
+        }
+    }
+
+    @Test
+    @InjectMojo(goal = "test-jar")
+    @Basedir("${basedir}/target/test-classes/unit/project-003")
+    @MojoParameter(name = "classifier", value = "test-async")
+    @MojoParameter(name = "async", value = "true")
+    public void testAsync(AbstractSourceJarMojo mojo) throws Exception {
+        mojo.execute();
+
+        File target = new File(getBasedir(), "target");
+        File jar = new File(target, FINAL_NAME_PREFIX + "project-003" + FINAL_NAME_SUFFIX + "-test-async.jar");
+        BackgroundPackaging.await(mojo.session, jar.toPath());
+        assertJarContent(jar, new String[] {
+            "test-default-configuration.properties",
+            "foo/project003/AppTest.java",
+            "foo/project003/",
+            "foo/",
+            "META-INF/MANIFEST.MF",
+            "META-INF/",
+            "META-INF/maven/",
+            "META-INF/maven/source/",
+            "META-INF/maven/source/maven-source-plugin-test-project-003/",
+            "META-INF/maven/source/maven-source-plugin-test-project-003/pom.properties",
+            "META-INF/maven/source/maven-source-plugin-test-project-003/pom.xml"
+        });
+    }
+
+    @Test
+    @InjectMojo(goal = "test-jar")
+    @Basedir("${basedir}/target/test-classes/unit/project-003")
+    @MojoParameter(name = "classifier", value = "test-async-failure")
+    @MojoParameter(name = "async", value = "true")
+    public void testAsyncFailure(AbstractSourceJarMojo mojo) throws Exception {
+        // only read when the jar is written, in the background
+        mojo.archive.setManifestFile(Paths.get(getBasedir(), "missing-MANIFEST.MF"));
+        mojo.execute();
+
+        File target = new File(getBasedir(), "target");
+        File jar = new File(target, FINAL_NAME_PREFIX + "project-003" + FINAL_NAME_SUFFIX + "-test-async-failure.jar");
+        MojoException failure =
+                assertThrows(MojoException.class, () -> BackgroundPackaging.await(mojo.session, jar.toPath()));
+        assertTrue(failure.getMessage().contains("missing-MANIFEST.MF"), failure.getMessage());
+        assertFalse(jar.exists());
+    }
+
+    @Test
+    @InjectMojo(goal = "test-jar")
+    @Basedir("${basedir}/target/test-classes/unit/project-003")
+    @MojoParameter(name = "classifier", value = "test-modules")
+    @MojoParameter(name = "moduleJars", value = "only")
+    public void testModuleJarsOnly(AbstractSourceJarMojo mojo) throws Exception {
+        // the test sources are the root of a module, the test resources belong to no module
+        SourceRoot module = mock(SourceRoot.class);
+        when(module.directory()).thenReturn(Paths.get(getBasedir(), "src/test/java"));
+        when(module.module()).thenReturn(Optional.of("org.example.app"));
+        when(module.language()).thenReturn(Language.JAVA_FAMILY);
+        ProjectManager projectManager = mojo.session.getService(ProjectManager.class);
+        when(projectManager.getEnabledSourceRoots(any(), eq(ProjectScope.TEST), eq(Language.JAVA_FAMILY)))
+                .thenAnswer(iom -> Stream.of(module));
+        mojo.execute();
+
+        File target = new File(getBasedir(), "target");
+        assertJarContent(
+                new File(
+                        target,
+                        FINAL_NAME_PREFIX + "project-003" + FINAL_NAME_SUFFIX + "-org.example.app-test-modules.jar"),
+                new String[] {
+                    "foo/project003/AppTest.java",
+                    "foo/project003/",
+                    "foo/",
+                    "META-INF/MANIFEST.MF",
+                    "META-INF/",
+                    "META-INF/maven/",
+                    "META-INF/maven/source/",
+                    "META-INF/maven/source/maven-source-plugin-test-project-003/",
+                    "META-INF/maven/source/maven-source-plugin-test-project-003/pom.properties",
+                    "META-INF/maven/source/maven-source-plugin-test-project-003/pom.xml"
+                });
+        assertJarContent(
+                new File(target, FINAL_NAME_PREFIX + "project-003" + FINAL_NAME_SUFFIX + "-test-modules.jar"),
+                new String[] {
+                    "test-default-configuration.properties",
+                    "META-INF/MANIFEST.MF",
+                    "META-INF/",
+                    "META-INF/maven/",
+                    "META-INF/maven/source/",
+                    "META-INF/maven/source/maven-source-plugin-test-project-003/",
+                    "META-INF/maven/source/maven-source-plugin-test-project-003/pom.properties",
+                    "META-INF/maven/source/maven-source-plugin-test-project-003/pom.xml"
+                });
+    }
+
+    @Test
+    @InjectMojo(goal = "test-jar")
+    @Basedir("${basedir}/target/test-classes/unit/project-003")
+    @MojoParameter(name = "classifier", value = "test-zip")
+    @MojoParameter(name = "archiveWriter", value = "zip")
+    @MojoParameter(name = "storedFiles", value = "**/*.properties")
+    public void testZipArchiveWriter(AbstractSourceJarMojo mojo) throws Exception {
+        mojo.execute();
+
+        File target = new File(getBasedir(), "target");
+        File jar = new File(target, FINAL_NAME_PREFIX + "project-003" + FINAL_NAME_SUFFIX + "-test-zip.jar");
+        assertJarContent(jar, new String[] {
+            "test-default-configuration.properties",
+            "foo/project003/AppTest.java",
+            "foo/project003/",
+            "foo/",
+            "META-INF/MANIFEST.MF",
+            "META-INF/",
+            "META-INF/maven/",
+            "META-INF/maven/source/",
+            "META-INF/maven/source/maven-source-plugin-test-project-003/",
+            "META-INF/maven/source/maven-source-plugin-test-project-003/pom.properties",
+            "META-INF/maven/source/maven-source-plugin-test-project-003/pom.xml"
+        });
+        try (JarFile zip = new JarFile(jar)) {
+            assertEquals("META-INF/", zip.entries().nextElement().getName());
+            assertEquals(
+                    "Maven Source Plugin", zip.getManifest().getMainAttributes().getValue("Created-By"));
+            assertEquals(ZipEntry.STORED, zip.getEntry("test-default-configuration.properties").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("foo/project003/AppTest.java").getMethod());
+        }
+    }
+
+    @Test
+    @InjectMojo(goal = "test-jar")
+    @Basedir("${basedir}/target/test-classes/unit/project-003")
+    @MojoParameter(name = "classifier", value = "test-manifest-plexus")
+    @MojoParameter(name = "forceCreation", value = "true")
+    public void testManifestFileOverridesGeneratedAttributes(AbstractSourceJarMojo mojo) throws Exception {
+        assertManifestFileWins(mojo, "test-manifest-plexus");
+    }
+
+    @Test
+    @InjectMojo(goal = "test-jar")
+    @Basedir("${basedir}/target/test-classes/unit/project-003")
+    @MojoParameter(name = "classifier", value = "test-manifest-zip")
+    @MojoParameter(name = "forceCreation", value = "true")
+    @MojoParameter(name = "archiveWriter", value = "zip")
+    public void testZipArchiveWriterManifestFileOverridesGeneratedAttributes(AbstractSourceJarMojo mojo)
+            throws Exception {
+        assertManifestFileWins(mojo, "test-manifest-zip");
+    }
+
+    private void assertManifestFileWins(AbstractSourceJarMojo mojo, String classifier) throws Exception {
+        File target = new File(getBasedir(), "target");
+        File manifestFile = new File(target, classifier + "-MANIFEST.MF");
+        Files.createDirectories(target.toPath());
+        Files.writeString(
+                manifestFile.toPath(), "Manifest-Version: 1.0\nCreated-By: Custom Build\nX-Custom: custom\n\n");
+        mojo.archive.setManifestFile(manifestFile.toPath());
+        mojo.execute();
+
+        File jar = new File(target, FINAL_NAME_PREFIX + "project-003" + FINAL_NAME_SUFFIX + "-" + classifier + ".jar");
+        try (JarFile zip = new JarFile(jar)) {
+            Attributes attributes = zip.getManifest().getMainAttributes();
+            // the manifest file is merged over the generated attributes
+            assertEquals("Custom Build", attributes.getValue("Created-By"));
+            assertEquals("custom", attributes.getValue("X-Custom"));
+        }
+    }
+
+    @Test
+    @InjectMojo(goal = "test-jar")
+    @Basedir("${basedir}/target/test-classes/unit/project-003")
+    @MojoParameter(name = "classifier", value = "test-zip-huffman")
+    @MojoParameter(name = "archiveWriter", value = "zip")
+    @MojoParameter(name = "compressionLevel", value = "9")
+    @MojoParameter(name = "compressionStrategy", value = "huffman")
+    public void testZipArchiveWriterCompression(AbstractSourceJarMojo mojo) throws Exception {
+        mojo.execute();
+
+        File target = new File(getBasedir(), "target");
+        File jar = new File(target, FINAL_NAME_PREFIX + "project-003" + FINAL_NAME_SUFFIX + "-test-zip-huffman.jar");
+        try (org.apache.commons.compress.archivers.zip.ZipFile zip =
+                org.apache.commons.compress.archivers.zip.ZipFile.builder().setFile(jar).get()) {
+            ZipArchiveEntry source = zip.getEntry("foo/project003/AppTest.java");
+            assertEquals(ZipEntry.DEFLATED, source.getMethod());
+            byte[] data;
+            try (InputStream in = zip.getInputStream(source)) {
+                data = in.readAllBytes();
+            }
+            // deflated by the writer with the level and strategy, as the jar is not recompressed
+            Deflater deflater = new Deflater(9, true);
+            deflater.setStrategy(Deflater.HUFFMAN_ONLY);
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                expected.write(buffer, 0, deflater.deflate(buffer));
+            }
+            deflater.end();
+            try (InputStream raw = zip.getRawInputStream(source)) {
+                assertArrayEquals(expected.toByteArray(), raw.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    @InjectMojo(goal = "test-jar")
+    @Basedir("${basedir}/target/test-classes/unit/project-003")
+    @MojoParameter(name = "classifier", value = "test-zip-locality")
+    @MojoParameter(name = "forceCreation", value = "true")
+    @MojoParameter(name = "archiveWriter", value = "zip")
+    @MojoParameter(name = "entryOrder", value = "locality")
+    @MojoParameter(name = "sourceIndex", value = "true")
+    @MojoParameter(name = "blockDeflateThreshold", value = "1")
+    public void testZipArchiveWriterLocalityOrderAndSourceIndex(AbstractSourceJarMojo mojo) throws Exception {
+        assertLocalityOrderAndSourceIndex(mojo, "test-zip-locality");
+    }
+
+    @Test
+    @InjectMojo(goal = "test-jar")
+    @Basedir("${basedir}/target/test-classes/unit/project-003")
+    @MojoParameter(name = "classifier", value = "test-plexus-locality")
+    @MojoParameter(name = "forceCreation", value = "true")
+    @MojoParameter(name = "entryOrder", value = "locality")
+    @MojoParameter(name = "sourceIndex", value = "true")
+    @MojoParameter(name = "blockDeflateThreshold", value = "1")
+    public void testLocalityOrderAndSourceIndex(AbstractSourceJarMojo mojo) throws Exception {
+        // the plexus archiver stores the large file, then the jar is copied again to deflate, sort and index it
+        assertLocalityOrderAndSourceIndex(mojo, "test-plexus-locality");
+    }
+
+    private void assertLocalityOrderAndSourceIndex(AbstractSourceJarMojo mojo, String classifier) throws Exception {
+        // larger than a block, deflated in blocks
+        File large = new File(getBasedir(), "src/test/java/foo/project003/Large.java");
+        StringBuilder content = new StringBuilder("package foo.project003;\n");
+        while (content.length() < 3 * 1024 * 1024) {
+            content.append("// line ").append(content.length()).append('\n');
+        }
+        Files.writeString(large.toPath(), content);
+        try {
+            mojo.execute();
+        } finally {
+            Files.delete(large.toPath());
+        }
+
+        File target = new File(getBasedir(), "target");
+        File jar = new File(target, FINAL_NAME_PREFIX + "project-003" + FINAL_NAME_SUFFIX + "-" + classifier + ".jar");
+        try (org.apache.commons.compress.archivers.zip.ZipFile zip =
+                org.apache.commons.compress.archivers.zip.ZipFile.builder().setFile(jar).get()) {
+            List<ZipArchiveEntry> entries = Collections.list(zip.getEntriesInPhysicalOrder());
+            // the index last
+            assertEquals(
+                    SourceIndexWriter.INDEX_NAME,
+                    entries.remove(entries.size() - 1).getName());
+            List<String> names =
+                    entries.stream().map(ZipArchiveEntry::getName).toList();
+            List<String> sorted = new ArrayList<>(names);
+            sorted.sort(LocalityOrder.COMPARATOR);
+            assertEquals(sorted, names);
+
+            Map<String, Long> index = SourceIndexWriter.read(zip);
+            assertEquals(
+                    Set.of("foo.project003.AppTest", "foo.project003.Large"), index.keySet());
+            assertEquals(
+                    zip.getEntry("foo/project003/AppTest.java").getLocalHeaderOffset(),
+                    index.get("foo.project003.AppTest"));
+            assertEquals(
+                    zip.getEntry("foo/project003/Large.java").getLocalHeaderOffset(),
+                    index.get("foo.project003.Large"));
+
+            ZipArchiveEntry entry = zip.getEntry("foo/project003/Large.java");
+            assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+            try (InputStream in = zip.getInputStream(entry)) {
+                assertEquals(content.toString(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
     @Provides
     InternalSession createSession() {
         InternalSession session = SessionMock.getMockSession("target/local-repo");
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.maven.api.plugin.Log;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class TracingTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void testDisabled() {
+        Tracing tracing = Tracing.of(null, " ", mock(Log.class));
+
+        assertSame(Tracing.DISABLED, tracing);
+        assertFalse(tracing.isEnabled());
+        assertSame(tracing.start("a", null), tracing.start("b", null));
+    }
+
+    @Test
+    void testExportToFile() throws IOException {
+        Path file = temp.resolve("traces/sources.jsonl");
+        Tracing tracing = Tracing.of(file, null, mock(Log.class));
+        try (Tracing.Span execution = tracing.start("package-sources", null)) {
+            execution.attribute("maven.project", "g:a:1.0");
+            try (Tracing.Span scan = tracing.start("scan", execution)) {
+                scan.attribute("root", "src/main/\"java\"").attribute("entries", 12);
+            }
+        }
+        tracing.export();
+        tracing.export();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        String json = lines.get(0);
+        assertTrue(json.startsWith("{\"resourceSpans\":[{"), json);
+        assertTrue(json.contains("\"name\":\"scan\""), json);
+        assertTrue(json.contains("\"name\":\"package-sources\""), json);
+        assertTrue(json.contains("{\"key\":\"entries\",\"value\":{\"intValue\":\"12\"}}"), json);
+        assertTrue(json.contains("{\"key\":\"root\",\"value\":{\"stringValue\":\"src/main/\\\"java\\\"\"}}"), json);
+        // the scan, ended first, is a child of the execution
+        String executionId = json.replaceAll(".*\"spanId\":\"([0-9a-f]{16})\",\"name\":\"package-sources\".*", "$1");
+        assertTrue(json.contains("\"parentSpanId\":\"" + executionId + "\",\"name\":\"scan\""), json);
+    }
+}
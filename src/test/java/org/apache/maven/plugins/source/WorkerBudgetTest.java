@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.source;
+
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkerBudgetTest {
+
+    @Test
+    void testParallelism() {
+        assertEquals(8, WorkerBudget.parallelism(8, 1));
+        assertEquals(5, WorkerBudget.parallelism(8, 4));
+        assertEquals(1, WorkerBudget.parallelism(8, 16));
+        assertEquals(1, WorkerBudget.parallelism(1, 0));
+    }
+
+    @Test
+    void testSubmit() throws Exception {
+        WorkerBudget budget = WorkerBudget.standalone();
+        assertSame(budget, WorkerBudget.standalone());
+
+        Future<String> thread = budget.submit(() -> Thread.currentThread().getName());
+        assertTrue(thread.get().startsWith("maven-source-worker-"), thread.get());
+    }
+}